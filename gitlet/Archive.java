@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Writes the files of a commit as a tar or zip archive. Blobs are copied
+ *  from the object store straight into the output stream in path order,
+ *  so memory use does not depend on the size of the tree or its files.
+ *
+ *  @author xxr
+ */
+public class Archive {
+    private static final int BLOCK_SIZE = 512;
+
+    private final Map<String, String> files;
+    private final long time;
+
+    // Archive the files of COMMIT, stamped with its commit time
+    public Archive(Commit commit) {
+        this.files = commit.getFilePointers();
+        this.time = CommitGraph.load().get(commit.getID()).getTime();
+    }
+
+    // True if FORMAT is one write understands
+    public static boolean isFormat(String format) {
+        return format.equals("tar") || format.equals("zip");
+    }
+
+    // Write the archive in FORMAT, "tar" or "zip", to OUT
+    public void write(String format, OutputStream out) throws IOException {
+        if (format.equals("tar")) {
+            writeTar(out);
+        } else if (format.equals("zip")) {
+            writeZip(out);
+        } else {
+            throw Utils.error("Unknown archive format: %s", format);
+        }
+        out.flush();
+    }
+
+    private void writeZip(OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            ZipEntry zipEntry = new ZipEntry(entry.getKey());
+            zipEntry.setLastModifiedTime(FileTime.fromMillis(time));
+            zip.putNextEntry(zipEntry);
+            Files.copy(blob(entry.getValue()).toPath(), zip);
+            zip.closeEntry();
+        }
+        zip.finish(); // leaves OUT open
+    }
+
+    private void writeTar(OutputStream out) throws IOException {
+        byte[] padding = new byte[BLOCK_SIZE];
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            File blobFile = blob(entry.getValue());
+            long size = blobFile.length();
+            out.write(tarHeader(entry.getKey(), size));
+            Files.copy(blobFile.toPath(), out);
+            out.write(padding, 0, (int) ((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE));
+        }
+        // The archive ends with two zero blocks
+        out.write(padding);
+        out.write(padding);
+    }
+
+    // A ustar header for a regular file named PATH of SIZE bytes
+    private byte[] tarHeader(String path, long size) {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        int split = 0; // names over 100 bytes are split at a '/' into prefix and name
+        if (name.length > 100) {
+            split = -1;
+            for (int i = name.length - 1; i > 0; i--) {
+                if (name[i] == '/' && name.length - i - 1 <= 100 && i <= 155) {
+                    split = i;
+                    break;
+                }
+            }
+            if (split < 0) {
+                throw Utils.error("File name too long for tar: %s", path);
+            }
+            System.arraycopy(name, 0, header, 345, split);
+            split++;
+        }
+        System.arraycopy(name, split, header, 0, name.length - split);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, time / 1000);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        // The checksum is computed with its own field set to spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    // Write VALUE as a NUL-terminated octal number filling LENGTH bytes at OFFSET
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw Utils.error("Value too large for tar header: %d", value);
+        }
+        for (int i = 0; i < length - 1; i++) {
+            int fromEnd = length - 2 - i;
+            header[offset + i] = (byte) (fromEnd < digits.length()
+                    ? digits.charAt(digits.length() - 1 - fromEnd) : '0');
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    private static File blob(String blobHash) {
+        File blobFile = Blob.blobFile(blobHash);
+        if (!blobFile.exists()) {
+            throw Utils.error("Blob file does not exist %s", blobHash);
+        }
+        return blobFile;
+    }
+}
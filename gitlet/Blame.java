@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/** Computes per-line provenance of a file along the first-parent history.
+ *  History is walked through the commit graph, and a diff is only run where
+ *  the file's blob hash changes between a parent and its child. Every result
+ *  is cached in .gitlet/blame keyed by (blob hash, commit that introduced the
+ *  blob), so annotating a newer commit picks up where an older one stopped.
+ *
+ *  @author xxr
+ */
+public class Blame {
+    static final File BLAME_DIR = Utils.join(Repository.GITLET_DIR, "blame");
+
+    private final CommitGraph graph;
+
+    /** Cached provenance of one version of a file. */
+    private static class Provenance implements Serializable {
+        private static final long serialVersionUID = -2120317295713505958L;
+
+        private final String[] commits; // distinct originating commits
+        private final int[] lineOrigins; // index into commits for every line
+
+        Provenance(List<String> origins) {
+            Map<String, Integer> index = new HashMap<>();
+            List<String> distinct = new ArrayList<>();
+            lineOrigins = new int[origins.size()];
+            for (int i = 0; i < origins.size(); i++) {
+                lineOrigins[i] = index.computeIfAbsent(origins.get(i), id -> {
+                    distinct.add(id);
+                    return distinct.size() - 1;
+                });
+            }
+            commits = distinct.toArray(new String[0]);
+        }
+
+        List<String> origins() {
+            List<String> result = new ArrayList<>(lineOrigins.length);
+            for (int origin : lineOrigins) {
+                result.add(commits[origin]);
+            }
+            return result;
+        }
+    }
+
+    /** A commit that introduced a new blob for the file. */
+    private static class Version {
+        private final String commitID;
+        private final String blobHash;
+
+        Version(String commitID, String blobHash) {
+            this.commitID = commitID;
+            this.blobHash = blobHash;
+        }
+    }
+
+    public Blame(CommitGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Returns the ID of the commit each line of FILENAME in COMMITID came
+     *  from. The file must exist in that commit. */
+    public List<String> lineOrigins(String commitID, String fileName) {
+        String blobHash = Commit.loadCommit(commitID).getFilePointers().get(fileName);
+
+        // Collect the versions of the file back to the newest cached one
+        Deque<Version> pending = new ArrayDeque<>();
+        Version base = null;
+        List<String> baseOrigins = null;
+        String id = commitID;
+        while (true) {
+            CommitGraph.Node node = graph.get(id);
+            String parentBlob = blobHash;
+            if (node.getParent() == null) {
+                parentBlob = null;
+            } else if (node.mightHaveChanged(fileName)) {
+                parentBlob = Commit.loadCommit(node.getParent()).getFilePointers().get(fileName);
+            }
+            if (!Objects.equals(parentBlob, blobHash)) {
+                Version version = new Version(id, blobHash);
+                File cacheFile = cacheFile(version);
+                if (cacheFile.exists()) {
+                    base = version;
+                    baseOrigins = Utils.readObject(cacheFile, Provenance.class).origins();
+                    break;
+                }
+                pending.push(version);
+                if (parentBlob == null) {
+                    break;
+                }
+            }
+            id = node.getParent();
+            blobHash = parentBlob;
+        }
+
+        // Replay the versions oldest first, carrying origins across each diff
+        String[] previousLines = base == null ? null : readLines(base.blobHash);
+        List<String> origins = baseOrigins;
+        if (!BLAME_DIR.exists()) {
+            BLAME_DIR.mkdir();
+        }
+        while (!pending.isEmpty()) {
+            Version version = pending.pop();
+            String[] lines = readLines(version.blobHash);
+            List<String> next = new ArrayList<>(lines.length);
+            int[] match = previousLines == null ? null : Diff.matchLines(previousLines, lines);
+            for (int i = 0; i < lines.length; i++) {
+                boolean carried = match != null && match[i] >= 0;
+                next.add(carried ? origins.get(match[i]) : version.commitID);
+            }
+            Utils.writeObjectAtomically(cacheFile(version), new Provenance(next));
+            previousLines = lines;
+            origins = next;
+        }
+        return origins;
+    }
+
+    // Split the contents of a blob into lines, without the final empty line
+    static String[] readLines(String blobHash) {
+        String content = Utils.readContentsAsString(Blob.blobFile(blobHash));
+        if (content.isEmpty()) {
+            return new String[0];
+        }
+        if (content.endsWith("\n")) {
+            content = content.substring(0, content.length() - 1);
+        }
+        return content.split("\n", -1);
+    }
+
+    private static File cacheFile(Version version) {
+        return Utils.join(BLAME_DIR, Utils.sha1(version.blobHash, version.commitID));
+    }
+}
@@ -3,10 +3,15 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Set;
 
 public class Blob implements Serializable {
+    private static final long serialVersionUID = 4022025939126896186L;
+
     private String fileName;
     private String fileContent;
     private String hash;
@@ -14,7 +19,7 @@ public class Blob implements Serializable {
     public Blob(String fileName, String fileContent) {
         this.fileName = fileName;
         this.fileContent = fileContent;
-        this.hash = Utils.sha1(fileContent);
+        this.hash = Utils.hashContents(fileContent.getBytes(StandardCharsets.UTF_8));
     }
 
     // Save the blob to the .gitlet/blobs dir
@@ -27,4 +32,45 @@ public class Blob implements Serializable {
     public String getHash() {
         return hash;
     }
+
+    // The hash a working file would get as a blob, without saving it
+    public static String hashOf(File file) {
+        return new Blob(file.getName(), Utils.readContentsAsString(file)).getHash();
+    }
+
+    // Returns the file holding blob HASH, fetching it from the clone source first in a partial clone
+    public static File blobFile(String hash) {
+        File blobFile = Utils.join(Repository.BLOBS_DIR, hash);
+        if (!blobFile.exists()) {
+            File source = promisedFile(Repository.GITLET_DIR, hash);
+            if (source != null) {
+                ObjectTransfer.linkOrCopy(source, blobFile);
+            }
+        }
+        return blobFile;
+    }
+
+    // True if blob HASH is missing locally but can be fetched from the clone source
+    public static boolean isPromised(String hash) {
+        return promisedFile(Repository.GITLET_DIR, hash) != null;
+    }
+
+    // The file of blob HASH in the clone source of the repository in GITLETDIR,
+    // following sources that are partial clones themselves; null if none has it
+    static File promisedFile(File gitletDir, String hash) {
+        Set<File> seen = new HashSet<>();
+        File promisor = Utils.join(gitletDir, "promisor");
+        while (promisor.exists()) {
+            File sourceDir = new File(Utils.readContentsAsString(promisor).trim());
+            if (!seen.add(sourceDir.getAbsoluteFile())) {
+                return null;
+            }
+            File source = Utils.join(sourceDir, "blobs", hash);
+            if (source.exists()) {
+                return source;
+            }
+            promisor = Utils.join(sourceDir, "promisor");
+        }
+        return null;
+    }
 }
@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/** A Bloom filter over the paths a commit changed relative to its first
+ *  parent. A negative answer from mightContain is exact, so path-limited
+ *  history walks can skip a commit without loading it; a positive answer
+ *  still has to be confirmed against the commit's file pointers.
+ *
+ *  @author xxr
+ */
+public class ChangedPathFilter implements Serializable {
+    private static final long serialVersionUID = 5861285332162260386L;
+
+    /** Commits changing more paths than this get no filter at all. */
+    private static final int MAX_PATHS = 512;
+    private static final int BITS_PER_PATH = 10;
+    private static final int NUM_HASHES = 7;
+
+    private final long[] bits; // null when the commit changed too many paths
+    private final int numBits;
+
+    public ChangedPathFilter(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            this.bits = null;
+            this.numBits = 0;
+            return;
+        }
+        int words = Math.max(1, (paths.size() * BITS_PER_PATH + 63) / 64);
+        this.bits = new long[words];
+        this.numBits = words * 64;
+        for (String path : paths) {
+            int h1 = mix(path.hashCode());
+            int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int bit = Integer.remainderUnsigned(h1 + i * h2, numBits);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    // Returns false only if PATH was definitely not changed
+    public boolean mightContain(String path) {
+        if (bits == null) {
+            return true;
+        }
+        int h1 = mix(path.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = Integer.remainderUnsigned(h1 + i * h2, numBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Murmur3 finalizer; String.hashCode alone clusters badly on similar paths
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,24 @@
+package gitlet;
+
+/** The result of checking out a branch.
+ *
+ *  @author xxr
+ */
+public class CheckoutResult {
+    private final String branch;
+    private final String commitID;
+
+    CheckoutResult(String branch, String commitID) {
+        this.branch = branch;
+        this.commitID = commitID;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    // The commit now at HEAD
+    public String getCommitID() {
+        return commitID;
+    }
+}
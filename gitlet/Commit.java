@@ -1,11 +1,15 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date; // TODO: You'll likely use this in this class
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 
 /** Represents a gitlet commit object.
@@ -14,28 +18,56 @@ import java.util.TreeMap;
  *  @author
  */
 public class Commit implements Serializable {
+    private static final long serialVersionUID = 2770567860937150692L;
+
+    /** Format of commit timestamps, as shown by log. */
+    static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+
     /** The message of this Commit. */
     private String message;   // Commit message
     private String timeStamp;   // Commit timestamp
-    private String parent;
-    private Map<String, String> filePointers; // Maps file names to blob hashes
-    private String id;
+    private ObjectId parent;
+    private FileTree filePointers; // Maps file names to blob hashes
+    private ObjectId id;
 
     public Commit(String message, String parent, Map<String, String> filePointers) {
       //  System.out.println("Debug - Commit constructor called");
       //  System.out.flush();
+        // Epoch time for the initial commit
+        this(message, parent, filePointers, parent == null ? new Date(0) : new Date());
+    }
+
+    // A commit made at TIME, as when importing history
+    public Commit(String message, String parent, Map<String, String> filePointers, Date time) {
         this.message = message;
-        this.parent = parent;
-        this.filePointers = new TreeMap<>(filePointers);
+        this.parent = ObjectId.fromHexOrNull(parent);
+        this.filePointers = FileTree.of(filePointers);
+        this.timeStamp = new SimpleDateFormat(DATE_FORMAT).format(time);
 
-        if (parent == null) {
-            this.timeStamp = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z").format(new Date(0)); // Epoch time for the initial commit
-        } else {
-            this.timeStamp = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z").format(new Date());
-        }
+        // Compute the unique ID by hashing the commit data
+        this.id = ObjectId.fromHex(computeID());
+    }
 
-        // Compute the unique ID using a SHA-1 hash of the commit data
-        this.id = Utils.sha1(message, timeStamp, parent == null ? "": parent, serializeFilePointers(filePointers));
+    // Commits written before IDs were stored as ObjectIds hold hex Strings
+    // and a TreeMap of files; accept both forms
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        message = (String) fields.get("message", null);
+        timeStamp = (String) fields.get("timeStamp", null);
+        parent = toObjectId(fields.get("parent", null));
+        id = toObjectId(fields.get("id", null));
+        @SuppressWarnings("unchecked")
+        Map<String, String> files = (Map<String, String>) fields.get("filePointers", null);
+        filePointers = FileTree.of(files == null ? new TreeMap<>() : files);
+    }
+
+    private static ObjectId toObjectId(Object value) {
+        return value instanceof String ? ObjectId.fromHex((String) value) : (ObjectId) value;
+    }
+
+    // Recompute the ID from the commit's contents; fsck compares it with getID()
+    String computeID() {
+        return Utils.hash(message, timeStamp, parent == null ? "": parent.toString(), serializeFilePointers(filePointers));
     }
 
     // Helper method to serialize filePointers deterministically
@@ -54,22 +86,53 @@ public class Commit implements Serializable {
 
     // Save the commit to the .gitlet/commits directory
     public void saveCommit() {
-        File commitFile = Utils.join(Repository.COMMITS_DIR, id);
+        File commitFile = Utils.join(Repository.COMMITS_DIR, id.toString());
         Utils.writeObject(commitFile, this);
     }
 
     // Static method to load a commit by ID
     public static Commit loadCommit(String commitID) {
-        File commitFile = Utils.join(Repository.COMMITS_DIR, commitID);
-        return Utils.readObject(commitFile, Commit.class);
+        return loadCommit(Repository.COMMITS_DIR, commitID);
+    }
+
+    // Load a commit from the commits directory COMMITSDIR of any repository
+    public static Commit loadCommit(File commitsDir, String commitID) {
+        File commitFile = Utils.join(commitsDir, commitID);
+        try (ObjectInputStream in = new CommitInputStream(new FileInputStream(commitFile))) {
+            return (Commit) in.readObject();
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    // Builds before the serialVersionUID was pinned wrote commits under other
+    // implicit UIDs. The field names never changed, so read any of them with
+    // the current class description and let readObject convert the values.
+    private static class CommitInputStream extends ObjectInputStream {
+        CommitInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals(Commit.class.getName())) {
+                return ObjectStreamClass.lookup(Commit.class);
+            }
+            return desc;
+        }
     }
 
     public String getID() {
+        return id.toString();
+    }
+
+    public ObjectId getObjectId() {
         return id;
     }
 
     public String getParent() {
-        return this.parent;
+        return parent == null ? null : parent.toString();
     }
 
     public String getMessage() {
@@ -84,4 +147,8 @@ public class Commit implements Serializable {
         return filePointers;
     }
 
+    public FileTree getFileTree() {
+        return filePointers;
+    }
+
 }
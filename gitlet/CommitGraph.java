@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** A compact side index of the commit history stored in .gitlet/commit-graph.
+ *  For every commit it keeps the parent, the commit time and a Bloom filter
+ *  of the paths changed relative to the parent, so history walks do not have
+ *  to deserialize whole commits. The index is rebuilt from the commits
+ *  directory whenever it is missing.
+ *
+ *  @author xxr
+ */
+public class CommitGraph implements Serializable {
+    private static final long serialVersionUID = -1589124955600578870L;
+
+    private static final String FILE_NAME = "commit-graph";
+
+    private final Map<ObjectId, Node> nodes = new HashMap<>();
+    private transient File gitletDir;
+    private transient boolean dirty;
+
+    /** What the graph remembers about a single commit. */
+    public static class Node implements Serializable {
+        private static final long serialVersionUID = -8209877838019005489L;
+
+        private final ObjectId parent;
+        private final long time;
+        private final ChangedPathFilter changedPaths;
+
+        Node(ObjectId parent, long time, ChangedPathFilter changedPaths) {
+            this.parent = parent;
+            this.time = time;
+            this.changedPaths = changedPaths;
+        }
+
+        public String getParent() {
+            return parent == null ? null : parent.toString();
+        }
+
+        // Commit time in milliseconds since the epoch
+        public long getTime() {
+            return time;
+        }
+
+        public boolean mightHaveChanged(String fileName) {
+            return changedPaths.mightContain(fileName);
+        }
+    }
+
+    // Load the graph of the current repository
+    public static CommitGraph load() {
+        return load(Repository.GITLET_DIR);
+    }
+
+    // Load the graph of the repository in GITLETDIR, rebuilding it if missing
+    // or written in an older format, such as the one keyed by hex Strings
+    public static CommitGraph load(File gitletDir) {
+        File graphFile = Utils.join(gitletDir, FILE_NAME);
+        CommitGraph graph = null;
+        if (graphFile.exists()) {
+            try {
+                graph = Utils.readObject(graphFile, CommitGraph.class);
+                graph.gitletDir = gitletDir;
+            } catch (IllegalArgumentException | ClassCastException excp) {
+                graph = null; // rebuilt below and rewritten on the next save
+            }
+        }
+        if (graph == null) {
+            graph = new CommitGraph();
+            graph.gitletDir = gitletDir;
+            graph.rebuild();
+        }
+        return graph;
+    }
+
+    // Write the graph back if anything was added since it was loaded
+    public void save() {
+        if (dirty) {
+            Utils.writeObjectAtomically(Utils.join(gitletDir, FILE_NAME), this);
+            dirty = false;
+        }
+    }
+
+    // Write the graph into the repository in GITLETDIR, which then owns it
+    public void saveTo(File gitletDir) {
+        this.gitletDir = gitletDir;
+        dirty = true;
+        save();
+    }
+
+    // Record COMMIT, whose first parent is PARENTCOMMIT (null for a root commit)
+    public void add(Commit commit, Commit parentCommit) {
+        Map<String, String> parentFiles = parentCommit == null
+                ? new HashMap<>() : parentCommit.getFilePointers();
+        Set<String> changed = changedPaths(parentFiles, commit.getFilePointers());
+        nodes.put(commit.getObjectId(), new Node(ObjectId.fromHexOrNull(commit.getParent()),
+                parseTime(commit.getTimeStamp()), new ChangedPathFilter(changed)));
+        dirty = true;
+    }
+
+    // Record a node copied from another repository's graph
+    void put(String commitID, Node node) {
+        nodes.put(ObjectId.fromHex(commitID), node);
+        dirty = true;
+    }
+
+    // Forget a commit that has been deleted from the object store
+    public void remove(String commitID) {
+        if (nodes.remove(ObjectId.fromHex(commitID)) != null) {
+            dirty = true;
+        }
+    }
+
+    public boolean contains(String commitID) {
+        return nodes.containsKey(ObjectId.fromHex(commitID));
+    }
+
+    // Returns the node for COMMITID, indexing the commit first if it is new
+    public Node get(String commitID) {
+        ObjectId key = ObjectId.fromHex(commitID);
+        Node node = nodes.get(key);
+        if (node == null) {
+            File commitsDir = Utils.join(gitletDir, "commits");
+            Commit commit = Commit.loadCommit(commitsDir, commitID);
+            Commit parent = commit.getParent() == null
+                    ? null : Commit.loadCommit(commitsDir, commit.getParent());
+            add(commit, parent);
+            node = nodes.get(key);
+        }
+        return node;
+    }
+
+    // Re-index every commit in the commits directory
+    public void rebuild() {
+        nodes.clear();
+        File commitsDir = Utils.join(gitletDir, "commits");
+        List<String> commitIDs = Utils.plainFilenamesIn(commitsDir);
+        if (commitIDs != null) {
+            Map<String, Commit> loaded = new HashMap<>();
+            for (String commitID : commitIDs) {
+                loaded.put(commitID, Commit.loadCommit(commitsDir, commitID));
+            }
+            for (Commit commit : loaded.values()) {
+                Commit parent = commit.getParent() == null ? null : loaded.get(commit.getParent());
+                add(commit, parent);
+            }
+        }
+        dirty = true;
+    }
+
+    // Paths added, removed or modified between BEFORE and AFTER
+    static Set<String> changedPaths(Map<String, String> before, Map<String, String> after) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!Objects.equals(before.get(entry.getKey()), entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String fileName : before.keySet()) {
+            if (!after.containsKey(fileName)) {
+                changed.add(fileName);
+            }
+        }
+        return changed;
+    }
+
+    private static long parseTime(String timeStamp) {
+        try {
+            return new SimpleDateFormat(Commit.DATE_FORMAT).parse(timeStamp).getTime();
+        } catch (ParseException excp) {
+            throw Utils.error("Malformed commit timestamp: %s", timeStamp);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Line-level diffing using Myers' O(ND) algorithm, in its linear-space form.
+ *
+ *  @author xxr
+ */
+public class Diff {
+
+    /** Returns, for every line of AFTER, the index of the line of BEFORE it
+     *  was carried over from, or -1 if the line is new in AFTER. */
+    public static int[] matchLines(String[] before, String[] after) {
+        int[] match = new int[after.length];
+        Arrays.fill(match, -1);
+
+        // Compare small integers rather than strings in the inner loop
+        Map<String, Integer> symbols = new HashMap<>();
+        int[] a = new int[before.length];
+        int[] b = new int[after.length];
+        for (int i = 0; i < before.length; i++) {
+            a[i] = symbols.computeIfAbsent(before[i], k -> symbols.size());
+        }
+        for (int i = 0; i < after.length; i++) {
+            b[i] = symbols.computeIfAbsent(after[i], k -> symbols.size());
+        }
+
+        int max = (a.length + b.length + 1) / 2 + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        myers(a, 0, a.length, b, 0, b.length, match, forward, backward, max + 1);
+        return match;
+    }
+
+    // Fill MATCH for the shortest edit script between A[aLo..aHi) and B[bLo..bHi).
+    // Rather than keeping the frontier of every round to trace the path back,
+    // which takes O(D(N+M)) space, find the middle snake of the path and solve
+    // both halves on their own, which takes linear space in FORWARD and BACKWARD
+    // (indexed from OFFSET) and at most twice the time.
+    private static void myers(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, int[] match,
+                              int[] forward, int[] backward, int offset) {
+        // Common prefix and suffix never need the full algorithm
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            match[bLo++] = aLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            match[--bHi] = --aHi;
+        }
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        if (n == 0 || m == 0) {
+            return;
+        }
+
+        // With both ends trimmed at least two edits remain, so each half has fewer
+        int[] snake = middleSnake(a, aLo, n, b, bLo, m, forward, backward, offset);
+        myers(a, aLo, aLo + snake[0], b, bLo, bLo + snake[1], match, forward, backward, offset);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x++, y++) {
+            match[bLo + y] = aLo + x;
+        }
+        myers(a, aLo + snake[2], aHi, b, bLo + snake[3], bHi, match, forward, backward, offset);
+    }
+
+    // The snake {x, y, u, v} from (x, y) to (u, v), relative to (aLo, bLo), in the
+    // middle of a shortest edit script between the N lines at aLo and the M at bLo.
+    // BACKWARD holds how far each diagonal of the reversed sequences has come.
+    private static int[] middleSnake(int[] a, int aLo, int n, int[] b, int bLo, int m,
+                                     int[] forward, int[] backward, int offset) {
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1
+                        && x + backward[offset + reverseK] >= n) {
+                    return new int[] {startX, startY, x, y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + n - 1 - x] == b[bLo + m - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d
+                        && x + forward[offset + forwardK] >= n) {
+                    return new int[] {n - x, m - y, n - startX, m - startY};
+                }
+            }
+        }
+        throw new IllegalStateException("No middle snake");
+    }
+}
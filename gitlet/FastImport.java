@@ -0,0 +1,427 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Reads history from a line-oriented stream, in a subset of the
+ *  git fast-import format, and writes it straight into the object store:
+ *
+ *      blob                      commit <branch>
+ *      mark :<n>                 mark :<n>
+ *      data <bytes>              committer <name> <email> <seconds> <zone>
+ *      <contents>                data <bytes>
+ *                                <message>
+ *      reset <branch>            from <:mark | commit | branch>
+ *      from <...>                M <mode> <:mark | blob | inline> <path>
+ *                                D <path>
+ *      done
+ *
+ *  Paths may be quoted C-style, as git writes them, and D removes a file
+ *  or a whole directory. A commit without "from" continues its branch.
+ *  Objects are written in batches to .gitlet/tmp, each flushed to disk
+ *  with one round of fsyncs before any of its files is renamed into the
+ *  object store, and the branch tips are only returned once the stream
+ *  has been read. Files left in .gitlet/tmp by an interrupted import are
+ *  removed by the next one.
+ *
+ *  @author xxr
+ */
+public class FastImport {
+    private static final int BATCH_OBJECTS = 1024;
+    private static final long BATCH_BYTES = 1 << 24;
+    // Outside the object directories, so no scan of them ever sees a half-written object
+    private static final File TMP_DIR = Utils.join(Repository.GITLET_DIR, "tmp");
+
+    private final CommitGraph graph;
+    private final Map<String, String> branches = new TreeMap<>();
+    private final Map<Integer, String> marks = new HashMap<>();
+    private final Batch batch = new Batch();
+    // The last commit imported on each branch and its files, to avoid reloading them
+    private final Map<String, Commit> tips = new HashMap<>();
+    private final Map<String, TreeMap<String, String>> tipFiles = new HashMap<>();
+    private final Map<String, String> existingBranches;
+    private InputStream in;
+    private int blobs;
+    private int commits;
+    private long bytes;
+
+    // An import into the repository whose branches are EXISTINGBRANCHES
+    public FastImport(CommitGraph graph, Map<String, String> existingBranches) {
+        this.graph = graph;
+        this.existingBranches = existingBranches;
+    }
+
+    /** Import the stream IN and return the branches it updated. */
+    public Map<String, String> run(InputStream input) throws IOException {
+        in = input.markSupported() ? input : new BufferedInputStream(input);
+        batch.clearTemps();
+        String line = readLine();
+        while (line != null && !line.equals("done")) {
+            if (line.equals("blob")) {
+                line = importBlob();
+            } else if (line.startsWith("commit ")) {
+                line = importCommit(branchName(line.substring("commit ".length())));
+            } else if (line.startsWith("reset ")) {
+                String branch = branchName(line.substring("reset ".length()));
+                line = readLine();
+                if (line != null && line.startsWith("from ")) {
+                    setTip(branch, resolve(line.substring("from ".length())));
+                    line = readLine();
+                }
+            } else if (line.isEmpty() || line.startsWith("#") || line.startsWith("progress ")) {
+                line = readLine();
+            } else {
+                throw Utils.error("Unsupported fast-import command: %s", line);
+            }
+        }
+        batch.flush();
+        return branches;
+    }
+
+    private String importBlob() throws IOException {
+        String line = readLine();
+        Integer mark = null;
+        if (line != null && line.startsWith("mark :")) {
+            mark = Integer.parseInt(line.substring("mark :".length()));
+            line = readLine();
+        }
+        String blobHash = addBlob(readData(line));
+        if (mark != null) {
+            marks.put(mark, blobHash);
+        }
+        return readLine();
+    }
+
+    // Store DATA as a blob, normalized to UTF-8 as Blob does, and return its hash
+    private String addBlob(byte[] data) throws IOException {
+        byte[] contents = new String(data, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+        String blobHash = Utils.hashContents(contents);
+        if (batch.addBlob(blobHash, contents)) {
+            blobs++;
+            bytes += contents.length;
+        }
+        return blobHash;
+    }
+
+    private String importCommit(String branch) throws IOException {
+        String line = readLine();
+        Integer mark = null;
+        if (line != null && line.startsWith("mark :")) {
+            mark = Integer.parseInt(line.substring("mark :".length()));
+            line = readLine();
+        }
+        if (line != null && line.startsWith("author ")) {
+            line = readLine();
+        }
+        Date time = new Date();
+        if (line != null && line.startsWith("committer ")) {
+            time = parseTime(line);
+            line = readLine();
+        }
+        String message = new String(readData(line), StandardCharsets.UTF_8);
+        if (message.endsWith("\n")) {
+            message = message.substring(0, message.length() - 1);
+        }
+
+        line = readLine();
+        if (line != null && line.startsWith("from ")) {
+            setTip(branch, resolve(line.substring("from ".length())));
+            line = readLine();
+        } else if (!tips.containsKey(branch) && existingBranches.get(branch) != null) {
+            setTip(branch, existingBranches.get(branch));
+        }
+        if (line != null && line.startsWith("merge ")) {
+            throw Utils.error("Merge commits cannot be imported.");
+        }
+
+        Commit parent = tips.get(branch);
+        TreeMap<String, String> files = tipFiles.computeIfAbsent(branch, b -> new TreeMap<>());
+        while (line != null && (line.startsWith("M ") || line.startsWith("D ") || line.equals("deleteall"))) {
+            if (line.equals("deleteall")) {
+                files.clear();
+            } else if (line.startsWith("D ")) {
+                // A directory goes with everything below it
+                String path = unquote(line.substring(2));
+                files.remove(path);
+                files.subMap(path + "/", path + "0").clear(); // '0' sorts right after '/'
+            } else {
+                String[] parts = line.split(" ", 4);
+                if (parts.length < 4) {
+                    throw Utils.error("Malformed fast-import line: %s", line);
+                }
+                String blobHash = parts[2].equals("inline")
+                        ? addBlob(readData(readLine())) : resolve(parts[2]);
+                files.put(unquote(parts[3]), blobHash);
+            }
+            line = readLine();
+        }
+
+        Commit commit = new Commit(message, parent == null ? null : parent.getID(), files, time);
+        if (batch.addCommit(commit)) {
+            commits++;
+        }
+        graph.add(commit, parent);
+        tips.put(branch, commit);
+        branches.put(branch, commit.getID());
+        if (mark != null) {
+            marks.put(mark, commit.getID());
+        }
+        return line;
+    }
+
+    // Make COMMITID the commit the next commit on BRANCH builds on
+    private void setTip(String branch, String commitID) {
+        if (tips.containsKey(branch) && tips.get(branch).getID().equals(commitID)) {
+            return;
+        }
+        Commit commit = batch.commit(commitID);
+        tips.put(branch, commit);
+        tipFiles.put(branch, new TreeMap<>(commit.getFilePointers()));
+        branches.put(branch, commitID);
+    }
+
+    // The object named by a mark, a branch or an ID
+    private String resolve(String name) {
+        if (name.startsWith(":")) {
+            String id = marks.get(Integer.parseInt(name.substring(1)));
+            if (id == null) {
+                throw Utils.error("Unknown mark: %s", name);
+            }
+            return id;
+        }
+        String branch = branchName(name);
+        if (branches.containsKey(branch)) {
+            return branches.get(branch);
+        }
+        if (existingBranches.get(branch) != null) {
+            return existingBranches.get(branch);
+        }
+        return name;
+    }
+
+    // PATH without the C-style quoting git applies to unusual names, such as
+    // "dir/a\"b\303\251", whose octal escapes are bytes of UTF-8
+    static String unquote(String path) {
+        if (path.length() < 2 || !path.startsWith("\"") || !path.endsWith("\"")) {
+            return path;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int end = path.length() - 1;
+        for (int i = 1; i < end; i++) {
+            char c = path.charAt(i);
+            if (c != '\\') {
+                int codePoint = path.codePointAt(i);
+                bytes.writeBytes(new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8));
+                i += Character.charCount(codePoint) - 1;
+                continue;
+            }
+            if (++i == end) {
+                throw Utils.error("Malformed quoted path: %s", path);
+            }
+            c = path.charAt(i);
+            int escaped = "abtnvfr".indexOf(c);
+            if (escaped >= 0) {
+                bytes.write("\u0007\b\t\n\u000b\f\r".charAt(escaped));
+            } else if (c >= '0' && c <= '7') {
+                if (i + 3 > end || !path.substring(i, i + 3).matches("[0-3][0-7][0-7]")) {
+                    throw Utils.error("Malformed quoted path: %s", path);
+                }
+                bytes.write(Integer.parseInt(path.substring(i, i + 3), 8));
+                i += 2;
+            } else {
+                bytes.write(c); // \\ and \"
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String branchName(String ref) {
+        String branch = ref.startsWith("refs/heads/") ? ref.substring("refs/heads/".length()) : ref;
+        if (!RefStore.isValidName(branch)) {
+            throw Utils.error("Invalid branch name: %s", branch);
+        }
+        return branch;
+    }
+
+    // "committer Name <email> <seconds> <zone>"
+    private static Date parseTime(String line) {
+        String[] parts = line.substring(line.lastIndexOf('>') + 1).trim().split(" ");
+        try {
+            return new Date(Long.parseLong(parts[0]) * 1000);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Malformed committer line: %s", line);
+        }
+    }
+
+    // Read the contents announced by the "data <bytes>" line LINE, and the optional newline after them
+    private byte[] readData(String line) throws IOException {
+        if (line == null || !line.startsWith("data ")) {
+            throw Utils.error("Expected data, found: %s", line);
+        }
+        int length = Integer.parseInt(line.substring("data ".length()));
+        byte[] data = in.readNBytes(length);
+        if (data.length < length) {
+            throw Utils.error("Unexpected end of fast-import stream.");
+        }
+        in.mark(1);
+        if (in.read() != '\n') {
+            in.reset();
+        }
+        return data;
+    }
+
+    // The next line without its newline, or null at the end of the stream
+    private String readLine() throws IOException {
+        byte[] buffer = new byte[64];
+        int length = 0;
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, length * 2);
+            }
+            buffer[length++] = (byte) c;
+        }
+        if (c == -1 && length == 0) {
+            return null;
+        }
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public int getBlobsImported() {
+        return blobs;
+    }
+
+    public int getCommitsImported() {
+        return commits;
+    }
+
+    public long getBytesImported() {
+        return bytes;
+    }
+
+    /** Objects waiting to be written. Each is written to a temporary file;
+     *  on flush all of them are forced to disk, then renamed into place, and
+     *  the object directories are forced once. */
+    private static class Batch {
+        // Blobs are queued before the commits that refer to them
+        private final Map<File, byte[]> objects = new LinkedHashMap<>();
+        private final Map<String, Commit> commits = new HashMap<>();
+        private long size;
+
+        // Queue blob BLOBHASH with CONTENTS; false if it is already stored
+        boolean addBlob(String blobHash, byte[] contents) throws IOException {
+            return add(Utils.join(Repository.BLOBS_DIR, blobHash), contents);
+        }
+
+        // Queue COMMIT; false if it is already stored
+        boolean addCommit(Commit commit) throws IOException {
+            if (!add(Utils.join(Repository.COMMITS_DIR, commit.getID()), Utils.serialize(commit))) {
+                return false;
+            }
+            commits.put(commit.getID(), commit);
+            return true;
+        }
+
+        private boolean add(File file, byte[] contents) throws IOException {
+            if (objects.containsKey(file) || file.exists()) {
+                return false;
+            }
+            objects.put(file, contents);
+            size += contents.length;
+            if (objects.size() >= BATCH_OBJECTS || size >= BATCH_BYTES) {
+                flush();
+            }
+            return true;
+        }
+
+        // The commit COMMITID, whether written yet or not
+        Commit commit(String commitID) {
+            Commit commit = commits.get(commitID);
+            if (commit == null) {
+                if (!Utils.join(Repository.COMMITS_DIR, commitID).exists()) {
+                    throw Utils.error("No commit with that id exists: %s", commitID);
+                }
+                commit = Commit.loadCommit(commitID);
+            }
+            return commit;
+        }
+
+        void flush() throws IOException {
+            if (objects.isEmpty()) {
+                return;
+            }
+            // Write everything first so the file system can coalesce the fsyncs that follow
+            List<FileChannel> channels = new ArrayList<>();
+            try {
+                for (Map.Entry<File, byte[]> object : objects.entrySet()) {
+                    FileChannel channel = FileChannel.open(temp(object.getKey()).toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE);
+                    channels.add(channel);
+                    ByteBuffer buffer = ByteBuffer.wrap(object.getValue());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                for (FileChannel channel : channels) {
+                    channel.force(false);
+                }
+            } finally {
+                for (FileChannel channel : channels) {
+                    channel.close();
+                }
+            }
+            for (File file : objects.keySet()) {
+                Files.move(temp(file).toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            forceDirectory(Repository.BLOBS_DIR);
+            forceDirectory(Repository.COMMITS_DIR);
+            objects.clear();
+            commits.clear();
+            size = 0;
+        }
+
+        // The temporary file for object FILE, named after its directory and ID
+        private static File temp(File file) {
+            return Utils.join(TMP_DIR, file.getParentFile().getName() + "-" + file.getName());
+        }
+
+        // Remove what an interrupted import left behind; the repository lock is held
+        void clearTemps() {
+            TMP_DIR.mkdir();
+            File[] stale = TMP_DIR.listFiles();
+            if (stale != null) {
+                for (File file : stale) {
+                    file.delete();
+                }
+            }
+        }
+
+        // Make the renames into DIR durable, where the platform allows it
+        private void forceDirectory(File dir) {
+            try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException excp) {
+                // Not supported for directories here
+            }
+        }
+    }
+}
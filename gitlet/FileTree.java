@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/** The immutable file map of a commit, from file names to blob hashes, in
+ *  file-name order. Entries live in parallel sorted arrays: each name is
+ *  split into an index into a table of directories shared by the whole tree
+ *  and an interned base name, and all blob IDs are packed into a single byte
+ *  array. Lookups are binary searches that never build the full path.
+ *
+ *  @author xxr
+ */
+public class FileTree extends AbstractMap<String, String> implements Serializable {
+    private static final long serialVersionUID = 2432685774300345242L;
+
+    private transient int size;
+    private transient String[] dirs; // distinct directories, "" for the top level
+    private transient int[] dirOf;
+    private transient String[] names;
+    private transient byte[] ids;
+    private transient int idLength;
+    private transient Set<Map.Entry<String, String>> entries;
+
+    private FileTree(Map<String, String> files) {
+        SortedMap<String, String> sorted = files instanceof SortedMap
+                && ((SortedMap<String, String>) files).comparator() == null
+                ? (SortedMap<String, String>) files : new TreeMap<>(files);
+        size = sorted.size();
+        dirOf = new int[size];
+        names = new String[size];
+        Map<String, Integer> dirIndex = new HashMap<>();
+        List<String> dirList = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            String path = entry.getKey();
+            int slash = path.lastIndexOf('/');
+            String dir = slash < 0 ? "" : path.substring(0, slash);
+            dirOf[i] = dirIndex.computeIfAbsent(dir, d -> {
+                dirList.add(d.intern());
+                return dirList.size() - 1;
+            });
+            names[i] = path.substring(slash + 1).intern();
+            ObjectId blobId = ObjectId.fromHex(entry.getValue());
+            if (ids == null) {
+                idLength = blobId.length();
+                ids = new byte[size * idLength];
+            }
+            blobId.copyTo(ids, i * idLength);
+            i++;
+        }
+        if (ids == null) {
+            ids = new byte[0];
+        }
+        dirs = dirList.toArray(new String[0]);
+    }
+
+    // The tree holding FILES, which may already be a FileTree
+    public static FileTree of(Map<String, String> files) {
+        return files instanceof FileTree ? (FileTree) files : new FileTree(files);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        ObjectId blobId = key instanceof String ? blobId((String) key) : null;
+        return blobId == null ? null : blobId.toString();
+    }
+
+    // The ID of the blob for FILENAME, or null if the tree does not have it
+    public ObjectId blobId(String fileName) {
+        int i = indexOf(fileName);
+        return i < 0 ? null : ObjectId.fromBytes(ids, i * idLength, idLength);
+    }
+
+    // Apply ACTION to the blob ID of every entry
+    public void forEachBlob(Consumer<ObjectId> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(ObjectId.fromBytes(ids, i * idLength, idLength));
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entries == null) {
+            entries = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = next++;
+                            String blobHash = ObjectId.fromBytes(ids, i * idLength, idLength).toString();
+                            return new AbstractMap.SimpleImmutableEntry<>(path(i), blobHash);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entries;
+    }
+
+    private String path(int i) {
+        String dir = dirs[dirOf[i]];
+        return dir.isEmpty() ? names[i] : dir + "/" + names[i];
+    }
+
+    private int indexOf(String fileName) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, fileName);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Compare the path of entry I with KEY as Strings, without concatenating it
+    private int compare(int i, String key) {
+        String dir = dirs[dirOf[i]];
+        String name = names[i];
+        int prefix = dir.isEmpty() ? 0 : dir.length() + 1;
+        int length = prefix + name.length();
+        int n = Math.min(length, key.length());
+        for (int k = 0; k < n; k++) {
+            char c;
+            if (k >= prefix) {
+                c = name.charAt(k - prefix);
+            } else if (k < dir.length()) {
+                c = dir.charAt(k);
+            } else {
+                c = '/';
+            }
+            if (c != key.charAt(k)) {
+                return c - key.charAt(k);
+            }
+        }
+        return length - key.length();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(idLength);
+        out.writeInt(dirs.length);
+        for (String dir : dirs) {
+            out.writeUTF(dir);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(dirOf[i]);
+            out.writeUTF(names[i]);
+        }
+        out.write(ids);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {
+        size = in.readInt();
+        idLength = in.readInt();
+        dirs = new String[in.readInt()];
+        for (int i = 0; i < dirs.length; i++) {
+            dirs[i] = in.readUTF().intern();
+        }
+        dirOf = new int[size];
+        names = new String[size];
+        for (int i = 0; i < size; i++) {
+            dirOf[i] = in.readInt();
+            names[i] = in.readUTF().intern();
+        }
+        ids = new byte[size * idLength];
+        in.readFully(ids);
+    }
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Verifies the integrity of the object store: every blob and commit must
+ *  hash to its file name, and every parent, blob and branch reference must
+ *  resolve. Objects are checked in parallel on a fixed-size thread pool, and
+ *  blobs are hashed as streams so their size does not matter.
+ *
+ *  @author xxr
+ */
+public class Fsck {
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+    private int commitsChecked;
+    private int blobsChecked;
+
+    /** Checks the whole object store and the tips in BRANCHES. Returns the
+     *  problems found, sorted. */
+    public List<String> check(Map<String, String> branches) {
+        List<String> commitIDs = names(Repository.COMMITS_DIR);
+        List<String> blobHashes = names(Repository.BLOBS_DIR);
+        Set<String> commits = new HashSet<>(commitIDs);
+        Set<String> blobs = new HashSet<>(blobHashes);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // Each task is named by the object it checks, so a failure can be reported against it
+            Map<Future<?>, String> tasks = new LinkedHashMap<>();
+            for (String blobHash : blobHashes) {
+                tasks.put(pool.submit(() -> checkBlob(blobHash)), "blob " + blobHash);
+            }
+            for (String commitID : commitIDs) {
+                tasks.put(pool.submit(() -> checkCommit(commitID, commits, blobs)), "commit " + commitID);
+            }
+            for (Map.Entry<Future<?>, String> task : tasks.entrySet()) {
+                try {
+                    task.getKey().get();
+                } catch (ExecutionException excp) {
+                    // An object that breaks its check is corrupt; the others still get checked
+                    problems.add("corrupt " + task.getValue() + " (" + excp.getCause() + ")");
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("fsck interrupted: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        commitsChecked = commitIDs.size();
+        blobsChecked = blobHashes.size();
+
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            if (branch.getValue() != null && !commits.contains(branch.getValue())) {
+                problems.add("missing commit " + branch.getValue()
+                        + " (tip of branch " + branch.getKey() + ")");
+            }
+        }
+
+        List<String> result = new ArrayList<>(problems);
+        Collections.sort(result);
+        return result;
+    }
+
+    private void checkBlob(String blobHash) {
+        File blobFile = Utils.join(Repository.BLOBS_DIR, blobHash);
+        try {
+            if (!Utils.hashContents(blobFile).equals(blobHash)) {
+                problems.add("corrupt blob " + blobHash);
+            }
+        } catch (IllegalArgumentException excp) {
+            problems.add("unreadable blob " + blobHash);
+        }
+    }
+
+    private void checkCommit(String commitID, Set<String> commits, Set<String> blobs) {
+        Commit commit;
+        try {
+            commit = Commit.loadCommit(commitID);
+        } catch (IllegalArgumentException excp) {
+            problems.add("unreadable commit " + commitID);
+            return;
+        }
+        if (!commitID.equals(commit.getID()) || !commitID.equals(commit.computeID())) {
+            problems.add("corrupt commit " + commitID);
+        }
+        if (commit.getParent() != null && !commits.contains(commit.getParent())) {
+            problems.add("missing commit " + commit.getParent() + " (parent of " + commitID + ")");
+        }
+        for (Map.Entry<String, String> entry : commit.getFilePointers().entrySet()) {
+            if (!blobs.contains(entry.getValue()) && !Blob.isPromised(entry.getValue())) {
+                problems.add("missing blob " + entry.getValue()
+                        + " (" + entry.getKey() + " in " + commitID + ")");
+            }
+        }
+    }
+
+    private static List<String> names(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    public int getCommitsChecked() {
+        return commitsChecked;
+    }
+
+    public int getBlobsChecked() {
+        return blobsChecked;
+    }
+}
@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/** Mark-and-sweep collection of commits and blobs that can no longer be
+ *  reached from any branch or from the staging area.
+ *
+ *  @author xxr
+ */
+public class GarbageCollector {
+    /** Unreachable objects younger than this are kept by default. */
+    static final long DEFAULT_GRACE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+    private final CommitGraph graph;
+    private final Set<String> liveCommits = new HashSet<>();
+    private final Set<ObjectId> liveBlobs = ConcurrentHashMap.newKeySet();
+
+    private int commitsRemoved;
+    private int blobsRemoved;
+    private long bytesReclaimed;
+
+    public GarbageCollector(CommitGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Marks everything reachable from the commits ROOTS and the blobs
+     *  STAGEDBLOBS. */
+    public void mark(Collection<String> roots, Collection<String> stagedBlobs) {
+        // The ancestry walk only touches the in-memory commit graph
+        Deque<String> pending = new ArrayDeque<>();
+        for (String root : roots) {
+            if (root != null) {
+                pending.push(root);
+            }
+        }
+        while (!pending.isEmpty()) {
+            String commitID = pending.pop();
+            if (liveCommits.add(commitID)) {
+                String parent = graph.get(commitID).getParent();
+                if (parent != null) {
+                    pending.push(parent);
+                }
+            }
+        }
+
+        // Loading the commits for their blobs is the expensive part, so fan it out
+        stagedBlobs.forEach(blobHash -> liveBlobs.add(ObjectId.fromHex(blobHash)));
+        liveCommits.parallelStream().forEach(commitID ->
+                Commit.loadCommit(commitID).getFileTree().forEachBlob(liveBlobs::add));
+    }
+
+    /** Deletes unmarked objects last modified more than GRACEMILLIS ago. */
+    public void sweep(long graceMillis) {
+        long cutoff = System.currentTimeMillis() - graceMillis;
+        for (File commitFile : unmarked(Repository.COMMITS_DIR, liveCommits::contains, cutoff)) {
+            long size = commitFile.length();
+            if (commitFile.delete()) {
+                graph.remove(commitFile.getName());
+                commitsRemoved++;
+                bytesReclaimed += size;
+            }
+        }
+        for (File blobFile : unmarked(Repository.BLOBS_DIR,
+                name -> liveBlobs.contains(ObjectId.fromHex(name)), cutoff)) {
+            long size = blobFile.length();
+            if (blobFile.delete()) {
+                blobsRemoved++;
+                bytesReclaimed += size;
+            }
+        }
+
+        // Cached blame results may refer to pruned commits; the cache rebuilds itself
+        if (commitsRemoved > 0) {
+            List<String> cached = Utils.plainFilenamesIn(Blame.BLAME_DIR);
+            if (cached != null) {
+                cached.forEach(name -> Utils.join(Blame.BLAME_DIR, name).delete());
+            }
+        }
+    }
+
+    private static List<File> unmarked(File dir, Predicate<String> live, long cutoff) {
+        List<File> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names != null) {
+            HashAlgorithm algorithm = HashAlgorithm.current();
+            for (String name : names) {
+                File file = Utils.join(dir, name);
+                // Leave alone anything that is not an object, such as temporary files
+                if (!algorithm.isObjectId(name)) {
+                    continue;
+                }
+                if (!live.test(name) && file.lastModified() < cutoff) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getCommitsRemoved() {
+        return commitsRemoved;
+    }
+
+    public int getBlobsRemoved() {
+        return blobsRemoved;
+    }
+
+    public long getBytesReclaimed() {
+        return bytesReclaimed;
+    }
+}
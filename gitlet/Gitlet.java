@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
 
 /**
  * Achieve add, init
@@ -18,19 +21,36 @@ public class Gitlet {
         String command = args[0];
         // Special case for 'init' command
         if (command.equals("init")) {
-            init();
+            if (args.length == 1) {
+                init(HashAlgorithm.SHA1);
+            } else if (args.length == 2 && args[1].startsWith("--hash=")) {
+                try {
+                    init(HashAlgorithm.forName(args[1].substring("--hash=".length())));
+                } catch (GitletException excp) {
+                    System.out.println(excp.getMessage());
+                }
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            return;
+        }
+        if (command.equals("clone")) {
+            if (args.length == 2 || (args.length == 3 && args[2].equals("--partial"))) {
+                cloneRepo(args[1], args.length == 3);
+            } else {
+                System.out.println("Incorrect operands.");
+            }
             return;
         }
         // Create Repository object for all other commands
         Repository repo = new Repository();
 
         switch (command){
-            case "init":
-                init();
-                break;
             case "add":
                 if (args.length < 2) {
                     System.out.println("Please specify a file to add.");
+                } else if (args[1].equals("-A")) {
+                    repo.addAll();
                 } else {
                     add(args[1]);
                 }
@@ -50,7 +70,20 @@ public class Gitlet {
                 }
                 break;
             case "log":
-                repo.log();
+                if (args.length == 3 && args[1].equals("--")) {
+                    repo.log(args[2]);
+                } else if (args.length > 1 && args[1].equals("--all")) {
+                    logAll(repo, args);
+                } else {
+                    repo.log();
+                }
+                break;
+            case "blame":
+                if (args.length < 2) {
+                    System.out.println("Please specify a file to blame.");
+                } else {
+                    repo.blame(args[1]);
+                }
                 break;
             case "merge":
                 if (args.length < 2) {
@@ -90,13 +123,89 @@ public class Gitlet {
                     repo.reset(args[1]);
                 }
                 break;
+            case "gc":
+                if (args.length == 1) {
+                    repo.gc(GarbageCollector.DEFAULT_GRACE_MILLIS);
+                } else if (args[1].equals("--prune=now")) {
+                    repo.gc(0);
+                } else if (args[1].matches("--prune=\\d+")) {
+                    long days = Long.parseLong(args[1].substring("--prune=".length()));
+                    repo.gc(days * 24 * 60 * 60 * 1000);
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            case "fsck":
+                repo.fsck();
+                break;
+            case "fast-import":
+                repo.fastImport();
+                break;
+            case "reflog":
+                repo.reflog(args.length > 1 ? args[1] : repo.getCurrentBranch());
+                break;
+            case "archive":
+                archive(repo, args);
+                break;
+            case "stash":
+                stash(repo, args);
+                break;
+            case "watch":
+                repo.watch();
+                break;
+            case "add-remote":
+                if (args.length < 3) {
+                    System.out.println("Incorrect operands.");
+                } else {
+                    repo.addRemote(args[1], args[2]);
+                }
+                break;
+            case "rm-remote":
+                if (args.length < 2) {
+                    System.out.println("Incorrect operands.");
+                } else {
+                    repo.rmRemote(args[1]);
+                }
+                break;
+            case "fetch":
+                if (args.length < 3) {
+                    System.out.println("Incorrect operands.");
+                } else {
+                    repo.fetch(args[1], args[2]);
+                }
+                break;
+            case "push":
+                if (args.length < 3) {
+                    System.out.println("Incorrect operands.");
+                } else {
+                    repo.push(args[1], args[2]);
+                }
+                break;
+            case "pull":
+                if (args.length < 3) {
+                    System.out.println("Incorrect operands.");
+                } else {
+                    repo.pull(args[1], args[2]);
+                }
+                break;
+            case "sparse-checkout":
+                if (args.length >= 3 && args[1].equals("set")) {
+                    repo.sparseCheckoutSet(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    repo.sparseCheckoutDisable();
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    repo.sparseCheckoutList();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
             default:
                 System.out.println("Invalid command." + command);
         }
 
     }
 
-    private static void init() {
+    private static void init(HashAlgorithm algorithm) {
         // initialize the file
         File gitletDir = new File(".gitlet");
         if (gitletDir.exists()) {
@@ -109,6 +218,7 @@ public class Gitlet {
         File commitsDir = Utils.join(gitletDir, "commits");
         blobsDir.mkdir();
         commitsDir.mkdir();
+        HashAlgorithm.save(Repository.GITLET_DIR, algorithm);
 
         // Create and initialize the repository
         Repository repo = new Repository();
@@ -116,6 +226,119 @@ public class Gitlet {
         System.out.println("Initialized empty Gitlet repository.");
     }
 
+    private static void cloneRepo(String path, boolean partial) {
+        if (Repository.GITLET_DIR.exists()) {
+            System.out.println("A Gitlet version-control system already exists in the current directory.");
+            return;
+        }
+        File sourceDir = new File(path);
+        if (!sourceDir.getName().equals(".gitlet")) {
+            sourceDir = Utils.join(sourceDir, ".gitlet");
+        }
+        if (!sourceDir.isDirectory()) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        Repository.cloneFrom(sourceDir, partial);
+    }
+
+    // log --all [--since=<date>] [--until=<date>] [-n <count>]
+    private static void logAll(Repository repo, String[] args) {
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        long limit = Long.MAX_VALUE;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                if (args[i].startsWith("--since=")) {
+                    since = parseDate(args[i].substring("--since=".length()));
+                } else if (args[i].startsWith("--until=")) {
+                    until = parseDate(args[i].substring("--until=".length()));
+                } else if (args[i].equals("-n") && i + 1 < args.length) {
+                    limit = Long.parseLong(args[++i]);
+                    if (limit < 0) {
+                        System.out.println("Incorrect operands.");
+                        return;
+                    }
+                } else {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+            }
+        } catch (NumberFormatException | ParseException excp) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        repo.logAll(since, until, limit);
+    }
+
+    // Milliseconds since the epoch of a local "yyyy-MM-dd[ HH:mm[:ss]]" date
+    private static long parseDate(String date) throws ParseException {
+        for (String pattern : new String[] {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "yyyy-MM-dd"}) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            try {
+                return format.parse(date).getTime();
+            } catch (ParseException excp) {
+                // Try the next, shorter pattern
+            }
+        }
+        throw new ParseException(date, 0);
+    }
+
+    // archive <commit> --format=tar|zip [-o <file>]
+    private static void archive(Repository repo, String[] args) {
+        String format = null;
+        String output = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = args[++i];
+            } else {
+                format = null;
+                break;
+            }
+        }
+        if (args.length < 3 || format == null) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        // Checked before the output file is created, so a typo leaves no empty file behind
+        if (!Archive.isFormat(format)) {
+            System.out.println("Unknown archive format: " + format);
+            return;
+        }
+        repo.archive(args[1], format, output);
+    }
+
+    // stash [push] | list | pop [N] | drop [N], where N may be written stash@{N}
+    private static void stash(Repository repo, String[] args) {
+        String action = args.length == 1 ? "push" : args[1];
+        int index = 0;
+        if (args.length == 3 && args[2].matches("(stash@\\{)?\\d+}?")) {
+            index = Integer.parseInt(args[2].replaceAll("\\D", ""));
+        } else if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        switch (action) {
+            case "push":
+                repo.stashPush();
+                break;
+            case "list":
+                repo.stashList();
+                break;
+            case "pop":
+                repo.stashPop(index);
+                break;
+            case "drop":
+                repo.stashDrop(index);
+                break;
+            default:
+                System.out.println("Incorrect operands.");
+        }
+    }
+
     private static void add(String fileName) {
         Repository repo = new Repository();
         repo.addFile(fileName);
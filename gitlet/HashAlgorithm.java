@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The digest used to name the objects of a repository. It is chosen at
+ *  init time and recorded in .gitlet/hash-algorithm; repositories without
+ *  that file use SHA-1. SHA-1 IDs are always the digest of the whole
+ *  contents, as in repositories made before the choice existed; SHA-256
+ *  repositories hash large blobs as a tree of chunks.
+ *
+ *  @author xxr
+ */
+public enum HashAlgorithm {
+    SHA1("SHA-1", 20, false),
+    SHA256("SHA-256", 32, true);
+
+    private static final String FILE_NAME = "hash-algorithm";
+    private static HashAlgorithm current;
+
+    private final String name;
+    private final int digestLength;
+    private final boolean chunked;
+
+    HashAlgorithm(String name, int digestLength, boolean chunked) {
+        this.name = name;
+        this.digestLength = digestLength;
+        this.chunked = chunked;
+    }
+
+    // The algorithm of the current repository
+    public static HashAlgorithm current() {
+        if (current == null) {
+            current = of(Repository.GITLET_DIR);
+        }
+        return current;
+    }
+
+    // The algorithm of the repository in GITLETDIR
+    public static HashAlgorithm of(File gitletDir) {
+        File config = Utils.join(gitletDir, FILE_NAME);
+        if (!config.exists()) {
+            return SHA1;
+        }
+        return forName(Utils.readContentsAsString(config).trim());
+    }
+
+    // Record ALGORITHM as the one used by the repository in GITLETDIR
+    public static void save(File gitletDir, HashAlgorithm algorithm) {
+        Utils.writeContents(Utils.join(gitletDir, FILE_NAME), algorithm.name + "\n");
+        if (gitletDir.equals(Repository.GITLET_DIR)) {
+            current = algorithm;
+        }
+    }
+
+    // Accepts "SHA-1"/"sha1" and "SHA-256"/"sha256"
+    public static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equalsIgnoreCase(name)
+                    || algorithm.name.replace("-", "").equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw Utils.error("Unknown hash algorithm: %s", name);
+    }
+
+    public MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support " + name);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Length of an object ID in bytes
+    public int getDigestLength() {
+        return digestLength;
+    }
+
+    // True if blobs over Utils.HASH_CHUNK_SIZE are named by the hash of their chunk hashes
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    // True if NAME is a hexadecimal ID of this algorithm, as object files are named
+    public boolean isObjectId(String name) {
+        if (name.length() != digestLength * 2) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
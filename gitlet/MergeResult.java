@@ -0,0 +1,32 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The result of a merge: the merge commit and the files left in conflict.
+ *
+ *  @author xxr
+ */
+public class MergeResult {
+    private final String commitID;
+    private final List<String> conflicts;
+
+    MergeResult(String commitID, List<String> conflicts) {
+        this.commitID = commitID;
+        this.conflicts = Collections.unmodifiableList(new ArrayList<>(conflicts));
+    }
+
+    public String getCommitID() {
+        return commitID;
+    }
+
+    // Files written with conflict markers, in the order they were found
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+
+    public boolean hasConflicts() {
+        return !conflicts.isEmpty();
+    }
+}
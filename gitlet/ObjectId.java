@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** The ID of a commit or blob, held as the raw digest bytes rather than a
+ *  hexadecimal string. The hash code is computed once up front, so IDs are
+ *  cheap to use as keys in hash sets and maps.
+ *
+ *  @author xxr
+ */
+public final class ObjectId implements Comparable<ObjectId>, Serializable {
+    private static final long serialVersionUID = 3692551801398975602L;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final byte[] bytes;
+    private final int hash;
+
+    private ObjectId(byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    // Wraps a copy of the digest BYTES
+    public static ObjectId fromBytes(byte[] bytes) {
+        return new ObjectId(bytes.clone());
+    }
+
+    // Wraps LENGTH digest bytes of DATA starting at OFFSET
+    public static ObjectId fromBytes(byte[] data, int offset, int length) {
+        return new ObjectId(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    // Parses a lower- or upper-case hexadecimal ID such as a file name in the object store
+    public static ObjectId fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw Utils.error("Malformed object id: %s", hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw Utils.error("Malformed object id: %s", hex);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return new ObjectId(bytes);
+    }
+
+    // Returns null for a null HEX, as for the parent of a root commit
+    static ObjectId fromHexOrNull(String hex) {
+        return hex == null ? null : fromHex(hex);
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    // Copies the digest bytes into DEST at OFFSET
+    void copyTo(byte[] dest, int offset) {
+        System.arraycopy(bytes, 0, dest, offset, bytes.length);
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return hash == other.hash && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // Orders IDs the same way as their hexadecimal names
+    @Override
+    public int compareTo(ObjectId other) {
+        return Arrays.compareUnsigned(bytes, other.bytes);
+    }
+
+    @Override
+    public String toString() {
+        return toHex(bytes);
+    }
+}
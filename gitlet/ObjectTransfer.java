@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Moves commits and blobs between the object stores of two repositories.
+ *  The sender's commit graph is walked back from the wanted tip until it
+ *  reaches commits the receiver already has, and only the commits and blobs
+ *  beyond that point are transferred. Objects are hard-linked when both
+ *  repositories are on the same filesystem and copied otherwise.
+ *
+ *  @author xxr
+ */
+class ObjectTransfer {
+    private final File fromDir;
+    private final File toDir;
+    private final CommitGraph fromGraph;
+    private final CommitGraph toGraph;
+    private int commitsSent;
+    private int blobsSent;
+
+    /** Prepares to send objects from the repository in FROMDIR to the one in
+     *  TODIR (both .gitlet directories). */
+    ObjectTransfer(File fromDir, File toDir) {
+        if (HashAlgorithm.of(fromDir) != HashAlgorithm.of(toDir)) {
+            throw Utils.error("Repositories use different hash algorithms.");
+        }
+        this.fromDir = fromDir;
+        this.toDir = toDir;
+        this.fromGraph = CommitGraph.load(fromDir);
+        this.toGraph = CommitGraph.load(toDir);
+    }
+
+    /** Returns the commits reachable from WANT that the receiver lacks,
+     *  newest first. */
+    List<String> negotiate(String want) {
+        List<String> missing = new ArrayList<>();
+        File toCommits = Utils.join(toDir, "commits");
+        String commitID = want;
+        while (commitID != null && !Utils.join(toCommits, commitID).exists()) {
+            missing.add(commitID);
+            commitID = fromGraph.get(commitID).getParent();
+        }
+        return missing;
+    }
+
+    /** Sends everything reachable from WANT that the receiver lacks. */
+    void send(String want) {
+        List<String> commitIDs = negotiate(want);
+        File fromCommits = Utils.join(fromDir, "commits");
+        File toCommits = Utils.join(toDir, "commits");
+        File fromBlobs = Utils.join(fromDir, "blobs");
+        File toBlobs = Utils.join(toDir, "blobs");
+
+        Set<String> blobHashes = new HashSet<>();
+        for (String commitID : commitIDs) {
+            blobHashes.addAll(Commit.loadCommit(fromCommits, commitID).getFilePointers().values());
+        }
+        for (String blobHash : blobHashes) {
+            File target = Utils.join(toBlobs, blobHash);
+            if (!target.exists()) {
+                File source = Utils.join(fromBlobs, blobHash);
+                if (!source.exists()) {
+                    // The sender is a partial clone; take the blob from where it was promised
+                    source = Blob.promisedFile(fromDir, blobHash);
+                    if (source == null) {
+                        throw Utils.error("Blob %s is missing from %s.", blobHash, fromDir);
+                    }
+                }
+                linkOrCopy(source, target);
+                blobsSent++;
+            }
+        }
+
+        // Commits go last, so the receiver never sees a commit without its blobs
+        for (int i = commitIDs.size() - 1; i >= 0; i--) {
+            String commitID = commitIDs.get(i);
+            linkOrCopy(Utils.join(fromCommits, commitID), Utils.join(toCommits, commitID));
+            toGraph.put(commitID, fromGraph.get(commitID));
+            commitsSent++;
+        }
+        fromGraph.save();
+        toGraph.save();
+    }
+
+    /** Returns true if ANCESTOR is reachable from COMMITID in the sender. */
+    boolean isAncestor(String ancestor, String commitID) {
+        while (commitID != null) {
+            if (commitID.equals(ancestor)) {
+                return true;
+            }
+            commitID = fromGraph.get(commitID).getParent();
+        }
+        return false;
+    }
+
+    // Objects are immutable, so a hard link is as good as a copy
+    static void linkOrCopy(File from, File to) {
+        try {
+            Files.createLink(to.toPath(), from.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            return;
+        } catch (IOException | UnsupportedOperationException excp) {
+            try {
+                Files.copy(from.toPath(), to.toPath());
+            } catch (IOException copyExcp) {
+                throw Utils.error("Cannot copy %s: %s", from, copyExcp.getMessage());
+            }
+        }
+    }
+
+    int getCommitsSent() {
+        return commitsSent;
+    }
+
+    int getBlobsSent() {
+        return blobsSent;
+    }
+}
@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The branches of a repository. Most refs live in .gitlet/packed-refs,
+ *  one "<commit> <name>" line each under an "# epoch <n>" header, and a
+ *  ref moved on its own is written to a loose file refs/<name> holding
+ *  "<commit> <epoch>", so that moving one branch rewrites one small file.
+ *  A loose ref only overrides the packed one if it was written in the
+ *  current epoch. A transaction writes every ref into a new packed-refs
+ *  under the next epoch and renames it into place, which moves all of its
+ *  refs at once and retires every older loose file; those are deleted
+ *  afterwards. Each move is appended to the reflog in logs/<name>.
+ *
+ *  Unborn branches, which have no commit yet, are stored as "-". Callers
+ *  hold the repository lock while writing.
+ *
+ *  @author xxr
+ */
+public class RefStore {
+    private static final String PACKED_REFS = "packed-refs";
+    private static final String EPOCH_HEADER = "# epoch ";
+    private static final String UNBORN = "-";
+
+    private final File gitletDir;
+    private final File packedFile;
+    private final File refsDir;
+    private final File logsDir;
+
+    private RefStore(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.packedFile = Utils.join(gitletDir, PACKED_REFS);
+        this.refsDir = Utils.join(gitletDir, "refs");
+        this.logsDir = Utils.join(gitletDir, "logs");
+    }
+
+    // The refs of the repository in GITLETDIR
+    public static RefStore of(File gitletDir) {
+        return new RefStore(gitletDir);
+    }
+
+    /** Whether NAME can name a branch. Names become paths below refs/ and
+     *  logs/, so they may not climb out of them, start with '/', have empty
+     *  or "." segments, or end in ".tmp" like the files of atomic writes. */
+    public static boolean isValidName(String name) {
+        if (name.isEmpty() || name.endsWith(".tmp") || name.contains("\\")) {
+            return false;
+        }
+        for (String segment : name.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.contains("..")
+                    || segment.chars().anyMatch(Character::isISOControl)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkName(String name) {
+        if (!isValidName(name)) {
+            throw Utils.error("Invalid branch name: %s", name);
+        }
+    }
+
+    // Refuse NAME if it would need a file where one of NAMES needs a directory,
+    // or the reverse, as "origin" and "origin/main" would
+    private static void checkConflicts(String name, Set<String> names) {
+        for (String other : names) {
+            if (other.startsWith(name + "/") || name.startsWith(other + "/")) {
+                throw Utils.error("Branch name %s conflicts with existing branch %s.", name, other);
+            }
+        }
+    }
+
+    /** All branches and their commits, null for unborn branches. */
+    public Map<String, String> read() {
+        migrate();
+        long epoch = readEpoch();
+        Map<String, String> refs = readPacked();
+        for (String name : looseNames(refsDir, "")) {
+            String[] loose = readLoose(name);
+            if (loose != null && Long.parseLong(loose[1]) >= epoch) {
+                refs.put(name, decode(loose[0]));
+            }
+        }
+        return refs;
+    }
+
+    /** The commit of branch NAME, null if it is unborn or does not exist. */
+    public String get(String name) {
+        if (!isValidName(name)) {
+            return null;
+        }
+        migrate();
+        String[] loose = readLoose(name);
+        if (loose != null && Long.parseLong(loose[1]) >= readEpoch()) {
+            return decode(loose[0]);
+        }
+        return readPacked().get(name);
+    }
+
+    /** Move branch NAME from OLD to COMMITID, either of which may be null,
+     *  recording MESSAGE in its reflog. Fails if the branch no longer
+     *  points at OLD, so a writer working from a stale view cannot undo
+     *  another's move. Only the loose ref, the reflog and the first line of
+     *  packed-refs are touched. */
+    public void update(String name, String old, String commitID, String message) {
+        checkName(name);
+        Map<String, String> refs = read();
+        checkConflicts(name, refs.keySet());
+        if (!Objects.equals(refs.get(name), old)) {
+            throw Utils.error("Branch %s has moved to %s; expected %s.",
+                    name, encode(refs.get(name)), encode(old));
+        }
+        File refFile = Utils.join(refsDir, name);
+        refFile.getParentFile().mkdirs();
+        Utils.writeContentsAtomically(refFile, encode(commitID) + " " + readEpoch() + "\n");
+        log(name, old, commitID, message);
+    }
+
+    /** Move every branch in UPDATES at once, recording MESSAGE in their reflogs. */
+    public void update(Map<String, String> updates, String message) {
+        updates.keySet().forEach(RefStore::checkName);
+        Map<String, String> refs = read();
+        Set<String> names = new TreeSet<>(refs.keySet());
+        names.addAll(updates.keySet());
+        updates.keySet().forEach(name -> checkConflicts(name, names));
+        Map<String, String> old = new TreeMap<>();
+        updates.keySet().forEach(name -> old.put(name, refs.get(name)));
+        refs.putAll(updates);
+        writePacked(refs, readEpoch() + 1);
+        deleteLoose(refsDir);
+        updates.forEach((name, commitID) -> log(name, old.get(name), commitID, message));
+    }
+
+    /** The reflog of branch NAME, oldest first, as "<old> <new> <millis> <message>" lines. */
+    public List<String> reflog(String name) {
+        checkName(name);
+        File logFile = Utils.join(logsDir, name);
+        List<String> entries = new ArrayList<>();
+        if (logFile.exists()) {
+            for (String line : Utils.readContentsAsString(logFile).split("\n")) {
+                if (!line.isEmpty()) {
+                    entries.add(line);
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Move the branches of the old single-file format into packed-refs
+    private void migrate() {
+        File legacy = Utils.join(gitletDir, "branches");
+        if (!legacy.exists()) {
+            return;
+        }
+        if (!packedFile.exists()) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> branches = Utils.readObject(legacy, TreeMap.class);
+            writePacked(branches, 0);
+        }
+        legacy.delete();
+    }
+
+    private void writePacked(Map<String, String> refs, long epoch) {
+        StringBuilder packed = new StringBuilder(EPOCH_HEADER).append(epoch).append('\n');
+        new TreeMap<>(refs).forEach((name, commitID) ->
+                packed.append(encode(commitID)).append(' ').append(name).append('\n'));
+        Utils.writeContentsAtomically(packedFile, packed.toString());
+    }
+
+    private long readEpoch() {
+        if (!packedFile.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(packedFile, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            return header == null ? 0 : Long.parseLong(header.substring(EPOCH_HEADER.length()));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s: %s", packedFile, excp.getMessage());
+        }
+    }
+
+    private Map<String, String> readPacked() {
+        Map<String, String> refs = new TreeMap<>();
+        if (packedFile.exists()) {
+            for (String line : Utils.readContentsAsString(packedFile).split("\n")) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    int space = line.indexOf(' ');
+                    refs.put(line.substring(space + 1), decode(line.substring(0, space)));
+                }
+            }
+        }
+        return refs;
+    }
+
+    // The commit and epoch in loose ref NAME, or null if there is none
+    private String[] readLoose(String name) {
+        File refFile = Utils.join(refsDir, name);
+        if (!refFile.isFile()) {
+            return null;
+        }
+        String[] parts = Utils.readContentsAsString(refFile).trim().split(" ");
+        return parts.length == 2 ? parts : null;
+    }
+
+    // Names of the loose refs below DIR, which holds those starting with PREFIX
+    private static List<String> looseNames(File dir, String prefix) {
+        List<String> names = new ArrayList<>();
+        File[] entries = dir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    names.addAll(looseNames(entry, prefix + entry.getName() + "/"));
+                } else if (!entry.getName().endsWith(".tmp")) {
+                    names.add(prefix + entry.getName());
+                }
+            }
+        }
+        return names;
+    }
+
+    // Delete the loose refs below DIR, which are outdated by a new packed-refs
+    private static void deleteLoose(File dir) {
+        File[] entries = dir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    deleteLoose(entry);
+                }
+                entry.delete();
+            }
+        }
+    }
+
+    private void log(String name, String old, String commitID, String message) {
+        File logFile = Utils.join(logsDir, name);
+        logFile.getParentFile().mkdirs();
+        String entry = encode(old) + " " + encode(commitID) + " " + System.currentTimeMillis()
+                + " " + message.replace('\n', ' ') + "\n";
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(entry.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write reflog %s: %s", logFile, excp.getMessage());
+        }
+    }
+
+    private static String encode(String commitID) {
+        return commitID == null ? UNBORN : commitID;
+    }
+
+    private static String decode(String value) {
+        return value.equals(UNBORN) ? null : value;
+    }
+}
@@ -1,8 +1,17 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static gitlet.Utils.*;
 
@@ -10,13 +19,24 @@ import static gitlet.Utils.*;
 /** Represents a gitlet repository.
  *  does at a high level.
  *
+ *  A Repository may be shared by several threads. Readers (log, status and
+ *  the history streams) run concurrently; every command that changes the
+ *  working tree, the staging area, HEAD or a branch takes the write lock,
+ *  which also holds the cross-process RepositoryLock and reloads the state
+ *  from disk, so separate gitlet processes cannot interleave their updates
+ *  or build on one another's stale view.
+ *
+ *  The methods returning data throw GitletException on user errors; the
+ *  command methods print results and error messages instead.
+ *
  *  @author xxr
  */
 public class Repository {
     private StagingArea stagingArea;
-    private String head; // Points to the current commit ID
+    private volatile String head; // Points to the current commit ID
     private Map<String, String> branches; // Maps branch names to commit IDs
-    private String currentBranch; // Tracks the current branch
+    private volatile String currentBranch; // Tracks the current branch
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     /** The current working directory. */
     public static final File CWD = new File(System.getProperty("user.dir"));
     /** The .gitlet directory. */
@@ -25,21 +45,22 @@ public class Repository {
     public static final File COMMITS_DIR = Utils.join(GITLET_DIR, "commits");
     public static final File HEAD_FILE = Utils.join(GITLET_DIR, "HEAD");
     private static final File STAGING_AREA_FILE = Utils.join(GITLET_DIR, "staging");
-    private static final File BRANCHES_FILE = Utils.join(GITLET_DIR, "branches");
+    private static final File REMOTES_FILE = Utils.join(GITLET_DIR, "remotes");
+    /** Names the clone source that blobs are fetched from on demand, if any. */
+    static final File PROMISOR_FILE = Utils.join(GITLET_DIR, "promisor");
 
     public Repository() {
 
         if (!GITLET_DIR.exists()) {
             throw new IllegalStateException("Not in an initialized Gitlet directory.");
         }
+        load();
+    }
+
+    // Read the repository state from disk, replacing what is held in memory
+    private void load() {
         // Initialize branches map
-        if (BRANCHES_FILE.exists()) {
-            @SuppressWarnings("unchecked")
-            Map<String, String> loadedBranches = Utils.readObject(BRANCHES_FILE, TreeMap.class);
-            this.branches = loadedBranches;
-        } else {
-            this.branches = new TreeMap<>(); // Initialize branches to avoid null
-        }
+        this.branches = Collections.synchronizedMap(RefStore.of(GITLET_DIR).read());
         // Initializing staging area
         if (STAGING_AREA_FILE.exists()) {
             stagingArea = Utils.readObject(STAGING_AREA_FILE, StagingArea.class);
@@ -61,11 +82,77 @@ public class Repository {
             this.currentBranch = "main";
             this.head = null;
 
-            branches.put(currentBranch, null); // Add 'main' branch to branches map
-            saveBranches();               // Save branches map to BRANCHES_FILE
-            saveHeadAndBranch();          // Save currentBranch to HEAD_FILE
+            moveBranch(currentBranch, null, "init"); // Add 'main' branch to the refs
+            saveHead();                   // Save currentBranch to HEAD_FILE
+        }
+
+    }
+
+    // Run ACTION holding the read lock
+    private <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
+    // Run ACTION holding the write lock and the cross-process lock, on fresh state
+    private <T> T write(Supplier<T> action) {
+        RepositoryLock processLock = RepositoryLock.of(GITLET_DIR);
+        lock.writeLock().lock();
+        try {
+            processLock.acquire();
+            try {
+                if (lock.getWriteHoldCount() == 1) {
+                    load(); // another process may have moved things since we last looked
+                }
+                return action.get();
+            } finally {
+                processLock.release();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void read(Runnable action) {
+        read(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void write(Runnable action) {
+        write(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Print the message of a user error raised by one of the data methods
+    private static void report(Runnable command) {
+        try {
+            command.run();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    public String getHead() {
+        return head;
+    }
+
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    // A snapshot of the branch map
+    public Map<String, String> getBranches() {
+        synchronized (branches) {
+            return new TreeMap<>(branches);
+        }
     }
 
     /**
@@ -75,154 +162,310 @@ public class Repository {
      * Add the file to the staging area if it’s new or modified.
      */
     public void addFile(String fileName) {
-        File file = Utils.join(CWD, fileName);
-        if (!file.exists()) {
-            System.out.println("File does not exist");
-            return;
-        }
+        write(() -> {
+            File file = Utils.join(CWD, fileName);
+            if (!file.exists()) {
+                System.out.println("File does not exist");
+                return;
+            }
 
-        String content = Utils.readContentsAsString(file);
-        Blob blob = new Blob(fileName, content); // Create a blob
-        String hash = blob.getHash();
+            stage(fileName);
+            Utils.writeObjectAtomically(STAGING_AREA_FILE, stagingArea); // Save staging area
+            System.out.println("File staged for addition: " + fileName);
+          //  System.out.println("Staging Area after add: " + stagingArea.getAddedFiles());
+        });
+    }
 
-        File blobFile = Utils.join(BLOBS_DIR, hash);
-        if (!blobFile.exists()) {
+    // add -A: stage every changed, deleted or untracked file in the sparse checkout
+    public void addAll() {
+        write(() -> {
+            WorkingTree workingTree = workingTree(SparseCheckout.load());
+            Map<String, String> tracked = head == null
+                    ? new TreeMap<>() : Commit.loadCommit(head).getFilePointers();
+            workingTree.getUnstagedChanges().forEach((fileName, change) -> {
+                if (change.equals("modified")) {
+                    stage(fileName);
+                } else if (tracked.containsKey(fileName)) {
+                    stagingArea.removeFile(fileName);
+                } else {
+                    stagingArea.getAddedFiles().remove(fileName);
+                }
+            });
+            workingTree.getUntrackedFiles().forEach(this::stage);
+            Utils.writeObjectAtomically(STAGING_AREA_FILE, stagingArea);
+        });
+    }
+
+    // Save the blob of working file FILENAME and stage it for addition
+    private void stage(String fileName) {
+        stagingArea.addFile(fileName, saveWorkingBlob(fileName));
+    }
+
+    // Save the contents of working file FILENAME as a blob unless already stored
+    private static String saveWorkingBlob(String fileName) {
+        Blob blob = new Blob(fileName, Utils.readContentsAsString(Utils.join(CWD, fileName)));
+        if (!Utils.join(BLOBS_DIR, blob.getHash()).exists()) {
             blob.saveBlob();
         }
+        return blob.getHash();
+    }
 
-        stagingArea.addFile(fileName, hash);
-        Utils.writeObject(STAGING_AREA_FILE, stagingArea); // Save staging area
-        System.out.println("File staged for addition: " + fileName);
-      //  System.out.println("Staging Area after add: " + stagingArea.getAddedFiles());
+    // Compare the working directory with HEAD and the staging area. Readers
+    // such as status get here holding only the read lock, so the stat cache
+    // is written under the cross-process lock, like every other file in .gitlet.
+    private WorkingTree workingTree(SparseCheckout sparse) {
+        Map<String, String> tracked = head == null
+                ? new TreeMap<>() : Commit.loadCommit(head).getFilePointers();
+        WorkingTree workingTree = new WorkingTree(tracked, stagingArea, sparse);
+        RepositoryLock processLock = RepositoryLock.of(GITLET_DIR);
+        processLock.acquire();
+        try {
+            workingTree.saveCache();
+        } finally {
+            processLock.release();
+        }
+        return workingTree;
+    }
+
+    // Refuse to overwrite an untracked working file with a file of TARGET
+    private void checkUntrackedFiles(Commit target, SparseCheckout sparse) {
+        Map<String, String> targetFiles = target.getFilePointers();
+        for (String fileName : workingTree(sparse).getUntrackedFiles()) {
+            if (targetFiles.containsKey(fileName)) {
+                throw Utils.error("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
     }
 
     // Commit changes
     public void commit (String message) {
-        if (stagingArea.getAddedFiles().isEmpty() && stagingArea.getRemovedFiles().isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            return;
-        }
+        write(() -> {
+            if (stagingArea.getAddedFiles().isEmpty() && stagingArea.getRemovedFiles().isEmpty()) {
+                System.out.println("No changes added to the commit.");
+                return;
+            }
 
-        // Load the parent commit if it exists
-        Commit parentCommit = head == null ? null: Commit.loadCommit(head);
+            // Load the parent commit if it exists
+            Commit parentCommit = head == null ? null: Commit.loadCommit(head);
 
-        // Build the filePointers map for the new commit
-        Map<String, String> filePointers = new TreeMap<>();
-        if (parentCommit != null) {
-            filePointers.putAll(parentCommit.getFilePointers()); // Start with parent's file pointers
-        }
-        filePointers.putAll(stagingArea.getAddedFiles()); // Add staged files
-        for (String removedFile: stagingArea.getRemovedFiles()) {
-            filePointers.remove(removedFile);  // Remove files staged for removal
-        }
+            // Build the filePointers map for the new commit
+            Map<String, String> filePointers = new TreeMap<>();
+            if (parentCommit != null) {
+                filePointers.putAll(parentCommit.getFilePointers()); // Start with parent's file pointers
+            }
+            filePointers.putAll(stagingArea.getAddedFiles()); // Add staged files
+            for (String removedFile: stagingArea.getRemovedFiles()) {
+                filePointers.remove(removedFile);  // Remove files staged for removal
+            }
 
-        // Debugging: Log filePointers before creating the commit
-      //  System.out.println("File pointers for new commit: " + filePointers);
+            // Debugging: Log filePointers before creating the commit
+          //  System.out.println("File pointers for new commit: " + filePointers);
 
-        // Create the new commit and save
-        Commit newCommit = new Commit(message, head, filePointers);
-        newCommit.saveCommit();
+            // Create the new commit and save
+            Commit newCommit = new Commit(message, head, filePointers);
+            newCommit.saveCommit();
+            CommitGraph graph = CommitGraph.load();
+            graph.add(newCommit, parentCommit);
+            graph.save();
 
-        // Update HEAD
-        //Utils.writeContents(HEAD_FILE, newCommit.getID());
-        branches.put(currentBranch, newCommit.getID()); // Update the current branch pointer
-        saveBranches();
-        saveHeadAndBranch();
+            // Update HEAD
+            //Utils.writeContents(HEAD_FILE, newCommit.getID());
+            head = newCommit.getID();
+            moveBranch(currentBranch, head, "commit: " + message); // Update the current branch pointer
 
-        stagingArea.clear();
-        Utils.writeObject(STAGING_AREA_FILE, stagingArea);
+            stagingArea.clear();
+            Utils.writeObjectAtomically(STAGING_AREA_FILE, stagingArea);
 
-     //  System.out.println("Commited with ID: " + newCommit.getID());
+         //  System.out.println("Commited with ID: " + newCommit.getID());
+        });
     }
 
     public void branch(String branchName) {
-        if (branches.containsKey(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            return;
-        }
-        if (head == null) {
-            System.out.println("No commits exist yet. Cannot create a branch.");
+        if (!RefStore.isValidName(branchName)) {
+            System.out.println("Invalid branch name.");
             return;
         }
-        branches.put(branchName, head);
-        saveBranches();
+        report(() -> write(() -> {
+            if (branches.containsKey(branchName)) {
+                System.out.println("A branch with that name already exists.");
+                return;
+            }
+            if (head == null) {
+                System.out.println("No commits exist yet. Cannot create a branch.");
+                return;
+            }
+            moveBranch(branchName, head, "branch: created from " + currentBranch);
+        }));
     }
 
-    private void saveBranches() {
-        Utils.writeObject(BRANCHES_FILE,(Serializable) branches);
+    // Point BRANCHNAME at COMMITID, in memory and in the ref store, logging MESSAGE
+    private void moveBranch(String branchName, String commitID, String message) {
+        RefStore.of(GITLET_DIR).update(branchName, branches.get(branchName), commitID, message);
+        branches.put(branchName, commitID);
     }
     // checkout -- [file-name]: Restore a file from the current commit
     public void checkoutFile(String fileName) {
-        if (head == null) {
-            System.out.println("No commits exist yet.");
-            return;
-        }
+        write(() -> {
+            if (head == null) {
+                System.out.println("No commits exist yet.");
+                return;
+            }
 
-        Commit currentCommit = Commit.loadCommit(head);
-        String blobHash = currentCommit.getFilePointers().get(fileName);
-        if (blobHash == null) {
-            System.out.println("File does not exist in that commit.");
-            return;
-        }
-        File blobFile = Utils.join(BLOBS_DIR, blobHash);
-        Utils.writeContents(Utils.join(CWD, fileName), Utils.readContents(blobFile));
+            Commit currentCommit = Commit.loadCommit(head);
+            String blobHash = currentCommit.getFilePointers().get(fileName);
+            if (blobHash == null) {
+                System.out.println("File does not exist in that commit.");
+                return;
+            }
+            writeWorkingFile(fileName, blobHash);
+        });
     }
 
     //checkout [commit-id] -- [file-name]: Restore a file from a specific commit
     public void checkoutFile(String commitID, String fileName) {
-        Commit commit = Commit.loadCommit(commitID);
-        if (commit == null) {
-            System.out.println("No commit with that id exists.");
-            return;
-        }
-        String blobHash = commit.getFilePointers().get(fileName);
-        if (blobHash == null) {
-            System.out.println("File does not exist in that commit.");
-            return;
-        }
-        File blobFile = Utils.join(BLOBS_DIR, blobHash);
-        if (!blobFile.exists()) {
-            System.out.println("Blob file does not exist " + blobHash);
-            return;
-        }
-        Utils.writeContents(Utils.join(CWD, fileName), Utils.readContents(blobFile));
+        write(() -> {
+            Commit commit = Commit.loadCommit(commitID);
+            if (commit == null) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+            String blobHash = commit.getFilePointers().get(fileName);
+            if (blobHash == null) {
+                System.out.println("File does not exist in that commit.");
+                return;
+            }
+            File blobFile = Blob.blobFile(blobHash);
+            if (!blobFile.exists()) {
+                System.out.println("Blob file does not exist " + blobHash);
+                return;
+            }
+            writeWorkingFile(fileName, blobHash);
+        });
     }
 
     // checkout [branch-name]
     public void checkoutBranch (String branchName) {
-        if (!branches.containsKey(branchName)) {
-            System.out.println("No such branch exists.");
-            return;
+        report(() -> checkout(branchName));
+    }
+
+    /** Switch the working tree, HEAD and the staging area to BRANCHNAME. */
+    public CheckoutResult checkout(String branchName) {
+        return write(() -> {
+            if (!branches.containsKey(branchName)) {
+                throw Utils.error("No such branch exists.");
+            }
+            if (branchName.equals(currentBranch)) {
+                throw Utils.error("No need to checkout the current branch.");
+            }
+            String branchHead = branches.get(branchName);
+            if (branchHead == null) {
+                throw Utils.error("Branch has no commits yet.");
+            }
+
+            materialize(Commit.loadCommit(branchHead));
+
+            // Update head and current branch
+            currentBranch = branchName;
+            head = branchHead;
+            saveHead();
+
+            stagingArea.clear();
+            Utils.writeObjectAtomically(STAGING_AREA_FILE, stagingArea);
+            return new CheckoutResult(branchName, branchHead);
+        });
+    }
+
+    // Replace the working files of the current commit with those of TARGET,
+    // touching only the paths inside the sparse checkout
+    private void materialize(Commit target) {
+        SparseCheckout sparse = SparseCheckout.load();
+        checkUntrackedFiles(target, sparse);
+        Map<String, String> targetFiles = target.getFilePointers();
+        if (head != null) {
+            for (String fileName : Commit.loadCommit(head).getFilePointers().keySet()) {
+                if (!targetFiles.containsKey(fileName) && sparse.matches(fileName)) {
+                    deleteWorkingFile(fileName);
+                }
+            }
         }
-        if (branchName.equals(currentBranch)) {
-            System.out.println("No need to checkout the current branch.");
+        targetFiles.forEach((fileName, blobHash) -> {
+            if (sparse.matches(fileName)) {
+                writeWorkingFile(fileName, blobHash);
+            }
+        });
+    }
+
+    // Delete working file FILENAME and the directories above it that this empties
+    private static void deleteWorkingFile(String fileName) {
+        File file = Utils.join(CWD, fileName);
+        if (!file.delete()) {
             return;
         }
-        String branchHead = branches.get(branchName);
-        if (branchHead == null) {
-            System.out.println("Branch has no commits yet.");
+        // File.delete only removes a directory once it is empty
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    private static void writeWorkingFile(String fileName, String blobHash) {
+        File file = Utils.join(CWD, fileName);
+        File parent = file.getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        Utils.writeContents(file, Utils.readContents(Blob.blobFile(blobHash)));
+    }
+
+    // sparse-checkout set [pattern]...: materialize only the given directory cones
+    public void sparseCheckoutSet(List<String> patterns) {
+        report(() -> write(() -> applySparseCheckout(patterns)));
+    }
+
+    // sparse-checkout disable: materialize the whole tree again
+    public void sparseCheckoutDisable() {
+        report(() -> write(() -> applySparseCheckout(null)));
+    }
+
+    public void sparseCheckoutList() {
+        read(() -> SparseCheckout.load().getPatterns().forEach(System.out::println));
+    }
+
+    // Switch to PATTERNS, deleting the files of HEAD that leave the checkout
+    // and writing those that enter it
+    private void applySparseCheckout(List<String> patterns) {
+        SparseCheckout sparse = SparseCheckout.of(patterns);
+        if (head == null) {
+            SparseCheckout.save(patterns);
             return;
         }
 
-        Commit branchCommit = Commit.loadCommit(branchHead);
-        Utils.plainFilenamesIn(CWD).forEach(fileName -> Utils.restrictedDelete(Utils.join(CWD, fileName)));
-        branchCommit.getFilePointers().forEach((fileName, blobHash) -> {
-            File blobFile = Utils.join(BLOBS_DIR, blobHash);
-            Utils.writeContents(Utils.join(CWD, fileName), Utils.readContents(blobFile));
+        // Refuse to drop local changes along with the files that leave
+        Set<String> changed = new TreeSet<>(stagingArea.getAddedFiles().keySet());
+        changed.addAll(stagingArea.getRemovedFiles());
+        workingTree(SparseCheckout.load()).getUnstagedChanges().forEach((fileName, change) -> {
+            if (change.equals("modified")) {
+                changed.add(fileName);
+            }
         });
+        for (String fileName : changed) {
+            if (!sparse.matches(fileName)) {
+                throw Utils.error("Your local changes to %s would be lost; commit them first.", fileName);
+            }
+        }
 
-        // Update head and current branch
-        currentBranch = branchName;
-        head = branchHead;
-        saveHeadAndBranch();
-
-        stagingArea.clear();
-        Utils.writeObject(STAGING_AREA_FILE, stagingArea);
+        SparseCheckout.save(patterns);
+        Commit.loadCommit(head).getFilePointers().forEach((fileName, blobHash) -> {
+            if (!sparse.matches(fileName)) {
+                deleteWorkingFile(fileName);
+            } else if (!Utils.join(CWD, fileName).exists()) {
+                writeWorkingFile(fileName, blobHash);
+            }
+        });
     }
 
-    private void saveHeadAndBranch() {
-        Utils.writeContents(HEAD_FILE, currentBranch);
-        saveBranches();
+    private void saveHead() {
+        Utils.writeContentsAtomically(HEAD_FILE, currentBranch);
     }
 
     // displays a history of commits starting from the current branch's
@@ -231,100 +474,275 @@ public class Repository {
             System.out.println("No commits exist yet.");
             return;
         }
+        history().forEach(this::printCommit);
+    }
 
-        Commit currentCommit = Commit.loadCommit(head);
-        while (currentCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + currentCommit.getID());
-            System.out.println("Date: " + currentCommit.getTimeStamp());
-            System.out.println(currentCommit.getMessage());
-            System.out.println();
+    /** The commits of the current branch, newest first. Commits are loaded
+     *  one at a time as the stream is consumed; the walk starts from the
+     *  HEAD of the moment the stream is created. */
+    public Stream<Commit> history() {
+        String start = read(() -> head);
+        Iterator<Commit> commits = new Iterator<Commit>() {
+            private String next = start;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
 
-            // Move to the parent commit
-            String parentID = currentCommit.getParent();
-            currentCommit = parentID != null ? Commit.loadCommit(parentID) : null;
-        }
+            @Override
+            public Commit next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Commit commit = Commit.loadCommit(next);
+                next = commit.getParent(); // Move to the parent commit
+                return commit;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(commits,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
-    public void merge(String branchName) {
-        if (!branches.containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            return;
-        }
+    // log --all: commits of every branch committed between SINCE and UNTIL, newest first, at most LIMIT
+    public void logAll(long since, long until, long limit) {
+        read(() -> {
+            allHistory(since, until).limit(limit).forEach(this::printCommit);
+        });
+    }
 
-        if (branchName.equals(currentBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            return;
-        }
+    /** The commits reachable from any branch with commit times between
+     *  SINCE and UNTIL (in milliseconds), newest first. The branch histories
+     *  are merged through a heap ordered by the commit times kept in the
+     *  commit graph, so commits are only loaded as they are returned, and
+     *  the walk ends once every pending commit is older than SINCE, without
+     *  looking further ahead than the commit asked for.
+     *
+     *  The walk starts from the branches of the moment the stream is
+     *  created, but the stream reads commits as it is consumed, so it must
+     *  be consumed while no gc can prune them; logAll does so under the
+     *  read lock. */
+    public Stream<Commit> allHistory(long since, long until) {
+        Collection<String> tips = getBranches().values();
+        CommitGraph graph = read(() -> CommitGraph.load());
+        Map<String, Long> times = new HashMap<>(); // doubles as the set of commits seen
+        PriorityQueue<String> pending = new PriorityQueue<>((a, b) -> {
+            int byTime = Long.compare(times.get(b), times.get(a));
+            return byTime != 0 ? byTime : a.compareTo(b);
+        });
+        Consumer<String> enqueue = commitID -> {
+            if (commitID != null && !times.containsKey(commitID)) {
+                times.put(commitID, graph.get(commitID).getTime());
+                pending.add(commitID);
+            }
+        };
+        tips.forEach(enqueue);
+
+        Iterator<Commit> commits = new Iterator<Commit>() {
+            private String next;
+            private boolean advanced;
+
+            // Pop commits until one is in range, queueing their parents
+            private String advance() {
+                while (!pending.isEmpty() && times.get(pending.peek()) >= since) {
+                    String commitID = pending.poll();
+                    enqueue.accept(graph.get(commitID).getParent());
+                    if (times.get(commitID) <= until) {
+                        return commitID;
+                    }
+                }
+                return null;
+            }
 
-        if (!stagingArea.getAddedFiles().isEmpty() || !stagingArea.getRemovedFiles().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            return;
-        }
+            @Override
+            public boolean hasNext() {
+                if (!advanced) {
+                    next = advance();
+                    advanced = true;
+                }
+                return next != null;
+            }
 
-        String branchHead = branches.get(branchName);
-        if (branchHead == null) {
-            System.out.println("Branch has no commits.");
-            return;
-        }
+            @Override
+            public Commit next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                advanced = false;
+                return Commit.loadCommit(next);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(commits,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 
-        // Step 2: Find the Split Point
-        String otherBranchHead = branches.get(branchName);
-        String splitPointID = findSplitPoint(otherBranchHead);
-        if (splitPointID == null) {
-            System.out.println("No split point found.");
-            return;
+    /** Every commit in the repository, in ID order, loaded lazily. */
+    public Stream<Commit> allCommits() {
+        List<String> commitFiles = Utils.plainFilenamesIn(COMMITS_DIR);
+        if (commitFiles == null) {
+            return Stream.empty();
         }
+        return commitFiles.stream().map(Commit::loadCommit);
+    }
 
-        Commit splitCommit = Commit.loadCommit(splitPointID);
-        Commit currentCommit = Commit.loadCommit(head);
-        Commit otherCommit = Commit.loadCommit(otherBranchHead);
+    // log -- [file-name]: only the commits of the current branch that changed the file
+    public void log(String fileName) {
+        read(() -> {
+            if (head == null) {
+                System.out.println("No commits exist yet.");
+                return;
+            }
 
-        // Step 3: Compare and Merge Files
-        Map<String, String> splitFiles = splitCommit.getFilePointers();
-        Map<String, String> currentFiles = currentCommit.getFilePointers();
-        Map<String, String> otherFiles = otherCommit.getFilePointers();
+            // The changed-path filters let us skip most commits without loading them
+            CommitGraph graph = CommitGraph.load();
+            String commitID = head;
+            while (commitID != null) {
+                CommitGraph.Node node = graph.get(commitID);
+                if (node.mightHaveChanged(fileName)) {
+                    Commit commit = Commit.loadCommit(commitID);
+                    String parentHash = node.getParent() == null ? null
+                            : Commit.loadCommit(node.getParent()).getFilePointers().get(fileName);
+                    if (!Objects.equals(parentHash, commit.getFilePointers().get(fileName))) {
+                        printCommit(commit);
+                    }
+                }
+                commitID = node.getParent();
+            }
+            // Commits indexed on the fly are not saved, since only the read lock
+            // is held; CommitGraph.get indexes them again when they are needed
+        });
+    }
 
-        for (String fileName : otherFiles.keySet()) {
-            String splitHash = splitFiles.get(fileName);
-            String currentHash = currentFiles.get(fileName);
-            String otherHash = otherFiles.get(fileName);
+    // blame [file-name]: show the commit each line of the file came from
+    public void blame(String fileName) {
+        read(() -> {
+            if (head == null) {
+                System.out.println("No commits exist yet.");
+                return;
+            }
+            String blobHash = Commit.loadCommit(head).getFilePointers().get(fileName);
+            if (blobHash == null) {
+                System.out.println("File does not exist in that commit.");
+                return;
+            }
 
-            if (splitHash == null) {
-                // File added in other branch but not in split point
-                checkoutFile(otherBranchHead, fileName);
-                stagingArea.addFile(fileName, otherHash);
-            } else if (Objects.equals(currentHash, splitHash) && !Objects.equals(otherHash, splitHash)) {
-                // File modified in other branch only
-                checkoutFile(otherBranchHead, fileName);
-                stagingArea.addFile(fileName, otherHash);
-            } else if (!Objects.equals(currentHash, splitHash) && !Objects.equals(otherHash, splitHash)) {
-                // Conflict: Modified in both branches
-                handleConflict(fileName, currentHash, otherHash);
+            CommitGraph graph = CommitGraph.load();
+            List<String> origins = new Blame(graph).lineOrigins(head, fileName);
+            String[] lines = Blame.readLines(blobHash);
+            SimpleDateFormat format = new SimpleDateFormat(Commit.DATE_FORMAT);
+            for (int i = 0; i < lines.length; i++) {
+                String origin = origins.get(i);
+                String date = format.format(new Date(graph.get(origin).getTime()));
+                System.out.println(origin.substring(0, 8) + " (" + date + ") " + lines[i]);
             }
-        }
+            // As in log --, the graph is only saved by writers
+        });
+    }
 
-        // Step 4: Create Merge Commit
-        String mergeMessage = "Merged " + branchName + " into " + currentBranch + ".";
-        Commit mergeCommit = new Commit(mergeMessage, head, currentCommit.getFilePointers());
-        mergeCommit.saveCommit();
-        head = mergeCommit.getID();
-        branches.put(currentBranch, head);
-        saveBranches();
-        saveHeadAndBranch();
+    private void printCommit(Commit commit) {
+        System.out.println("===");
+        System.out.println("commit " + commit.getID());
+        System.out.println("Date: " + commit.getTimeStamp());
+        System.out.println(commit.getMessage());
+        System.out.println();
+    }
 
-        System.out.println("Merge successful.");
+    public void merge(String branchName) {
+        report(() -> {
+            MergeResult result = mergeBranch(branchName);
+            for (String fileName : result.getConflicts()) {
+                System.out.println("Encountered a merge conflict in " + fileName);
+            }
+            System.out.println("Merge successful.");
+        });
+    }
+
+    /** Merge BRANCHNAME into the current branch and commit the result. */
+    public MergeResult mergeBranch(String branchName) {
+        return write(() -> {
+            if (!branches.containsKey(branchName)) {
+                throw Utils.error("A branch with that name does not exist.");
+            }
+
+            if (branchName.equals(currentBranch)) {
+                throw Utils.error("Cannot merge a branch with itself.");
+            }
+
+            if (!stagingArea.getAddedFiles().isEmpty() || !stagingArea.getRemovedFiles().isEmpty()) {
+                throw Utils.error("You have uncommitted changes.");
+            }
+
+            String branchHead = branches.get(branchName);
+            if (branchHead == null) {
+                throw Utils.error("Branch has no commits.");
+            }
+
+            // Step 2: Find the Split Point
+            String otherBranchHead = branches.get(branchName);
+            String splitPointID = findSplitPoint(otherBranchHead);
+            if (splitPointID == null) {
+                throw Utils.error("No split point found.");
+            }
+
+            Commit splitCommit = Commit.loadCommit(splitPointID);
+            Commit currentCommit = Commit.loadCommit(head);
+            Commit otherCommit = Commit.loadCommit(otherBranchHead);
+
+            // Step 3: Compare and Merge Files
+            Map<String, String> splitFiles = splitCommit.getFilePointers();
+            Map<String, String> currentFiles = currentCommit.getFilePointers();
+            Map<String, String> otherFiles = otherCommit.getFilePointers();
+            SparseCheckout sparse = SparseCheckout.load();
+            checkUntrackedFiles(otherCommit, sparse);
+            List<String> conflicts = new ArrayList<>();
+
+            for (String fileName : otherFiles.keySet()) {
+                String splitHash = splitFiles.get(fileName);
+                String currentHash = currentFiles.get(fileName);
+                String otherHash = otherFiles.get(fileName);
+
+                if (splitHash == null) {
+                    // File added in other branch but not in split point
+                    if (sparse.matches(fileName)) {
+                        checkoutFile(otherBranchHead, fileName);
+                    }
+                    stagingArea.addFile(fileName, otherHash);
+                } else if (Objects.equals(currentHash, splitHash) && !Objects.equals(otherHash, splitHash)) {
+                    // File modified in other branch only
+                    if (sparse.matches(fileName)) {
+                        checkoutFile(otherBranchHead, fileName);
+                    }
+                    stagingArea.addFile(fileName, otherHash);
+                } else if (!Objects.equals(currentHash, splitHash) && !Objects.equals(otherHash, splitHash)) {
+                    // Conflict: Modified in both branches; only files in the checkout are written
+                    if (sparse.matches(fileName)) {
+                        handleConflict(fileName, currentHash, otherHash);
+                    }
+                    conflicts.add(fileName);
+                }
+            }
+
+            // Step 4: Create Merge Commit
+            String mergeMessage = "Merged " + branchName + " into " + currentBranch + ".";
+            Commit mergeCommit = new Commit(mergeMessage, head, currentCommit.getFilePointers());
+            mergeCommit.saveCommit();
+            CommitGraph graph = CommitGraph.load();
+            graph.add(mergeCommit, currentCommit);
+            graph.save();
+            head = mergeCommit.getID();
+            moveBranch(currentBranch, head, "merge " + branchName);
+
+            return new MergeResult(head, conflicts);
+        });
     }
 
     private void handleConflict(String fileName, String currentHash, String otherHash) {
-        String currentContent = currentHash != null ? Utils.readContentsAsString(Utils.join(BLOBS_DIR, currentHash)) : "";
-        String otherContent = otherHash != null ? Utils.readContentsAsString(Utils.join(BLOBS_DIR, otherHash)) : "";
+        String currentContent = currentHash != null ? Utils.readContentsAsString(Blob.blobFile(currentHash)) : "";
+        String otherContent = otherHash != null ? Utils.readContentsAsString(Blob.blobFile(otherHash)) : "";
 
         String conflictContent = "<<<<<<< HEAD\n" + currentContent + "=======\n" + otherContent + ">>>>>>>\n";
         File file = Utils.join(CWD, fileName);
         Utils.writeContents(file, conflictContent);
-
-        System.out.println("Encountered a merge conflict in " + fileName);
     }
 
     private String findSplitPoint(String branchHead) {
@@ -353,30 +771,15 @@ public class Repository {
     }
 
     public void globalLog() {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMITS_DIR);
-        if (commitFiles == null) return;
-
-        for (String commitID : commitFiles) {
-            Commit commit = Commit.loadCommit(commitID);
-            System.out.println("===");
-            System.out.println("commit " + commit.getID());
-            System.out.println("Date: " + commit.getTimeStamp());
-            System.out.println(commit.getMessage());
-            System.out.println();
-        }
+        allCommits().forEach(this::printCommit);
     }
 
     public void find(String message) {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMITS_DIR);
-        if (commitFiles == null) return;
-
         boolean found = false;
-        for (String commitID : commitFiles) {
-            Commit commit = Commit.loadCommit(commitID);
-            if (commit.getMessage().equals(message)) {
-                System.out.println(commitID);
-                found = true;
-            }
+        Iterator<Commit> commits = allCommits().filter(c -> c.getMessage().equals(message)).iterator();
+        while (commits.hasNext()) {
+            System.out.println(commits.next().getID());
+            found = true;
         }
         if (!found) {
             System.out.println("Found no commit with that message.");
@@ -384,9 +787,10 @@ public class Repository {
     }
 
     public void status() {
+        StatusReport report = statusReport();
         System.out.println("=== Branches ===");
-        for (String branch : branches.keySet()) {
-            if (branch.equals(currentBranch)) {
+        for (String branch : report.getBranches()) {
+            if (branch.equals(report.getCurrentBranch())) {
                 System.out.println("*" + branch);
             } else {
                 System.out.println(branch);
@@ -394,41 +798,460 @@ public class Repository {
         }
 
         System.out.println("\n=== Staged Files ===");
-        for (String file : stagingArea.getAddedFiles().keySet()) {
-            System.out.println(file);
-        }
+        report.getStagedFiles().forEach(System.out::println);
 
         System.out.println("\n=== Removed Files ===");
-        for (String file : stagingArea.getRemovedFiles()) {
-            System.out.println(file);
-        }
+        report.getRemovedFiles().forEach(System.out::println);
+
+        System.out.println("\n=== Modifications Not Staged For Commit ===");
+        report.getUnstagedChanges().forEach((file, change) ->
+                System.out.println(file + " (" + change + ")"));
+
+        System.out.println("\n=== Untracked Files ===");
+        report.getUntrackedFiles().forEach(System.out::println);
     }
 
-    public void reset(String commitID) {
-        File commitFile = Utils.join(COMMITS_DIR, commitID);
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
+    /** The branches, staged changes and working tree changes, limited to
+     *  the sparse checkout. */
+    public StatusReport statusReport() {
+        return read(() -> {
+            SparseCheckout sparse = SparseCheckout.load();
+            List<String> staged = new ArrayList<>();
+            for (String file : stagingArea.getAddedFiles().keySet()) {
+                if (sparse.matches(file)) {
+                    staged.add(file);
+                }
+            }
+            List<String> removed = new ArrayList<>();
+            for (String file : stagingArea.getRemovedFiles()) {
+                if (sparse.matches(file)) {
+                    removed.add(file);
+                }
+            }
+            WorkingTree workingTree = workingTree(sparse);
+            return new StatusReport(getBranches().keySet(), currentBranch, staged, removed,
+                    workingTree.getUnstagedChanges(), workingTree.getUntrackedFiles());
+        });
+    }
+
+    // stash push: shelve the staged and unstaged changes and restore HEAD's versions
+    public void stashPush() {
+        report(() -> write(() -> {
+            if (head == null) {
+                throw Utils.error("You do not have the initial commit yet.");
+            }
+            SparseCheckout sparse = SparseCheckout.load();
+            WorkingTree workingTree = workingTree(sparse);
+            Map<String, String> staged = stagingArea.getAddedFiles();
+            Set<String> removed = stagingArea.getRemovedFiles();
+            if (staged.isEmpty() && removed.isEmpty() && workingTree.getUnstagedChanges().isEmpty()) {
+                throw Utils.error("No local changes to save.");
+            }
+
+            // The working tree as a commit; only modified files need new blobs
+            Commit headCommit = Commit.loadCommit(head);
+            Map<String, String> headFiles = headCommit.getFilePointers();
+            Map<String, String> files = new TreeMap<>(headFiles);
+            files.putAll(staged);
+            files.keySet().removeAll(removed);
+            workingTree.getUnstagedChanges().forEach((fileName, change) -> {
+                if (change.equals("modified")) {
+                    files.put(fileName, saveWorkingBlob(fileName));
+                } else {
+                    files.remove(fileName);
+                }
+            });
+            String message = "WIP on " + currentBranch + ": " + headCommit.getMessage();
+            Commit stashCommit = new Commit(message, head, files);
+            stashCommit.saveCommit();
+            CommitGraph graph = CommitGraph.load();
+            graph.add(stashCommit, headCommit);
+            graph.save();
+
+            Stash stash = Stash.load();
+            stash.push(new Stash.Entry(stashCommit.getID(), staged, removed));
+            stash.save();
+
+            // Put back HEAD's version of every stashed path
+            Set<String> stashed = new HashSet<>(staged.keySet());
+            stashed.addAll(removed);
+            stashed.addAll(workingTree.getUnstagedChanges().keySet());
+            for (String fileName : stashed) {
+                if (!sparse.matches(fileName)) {
+                    continue;
+                }
+                if (headFiles.containsKey(fileName)) {
+                    writeWorkingFile(fileName, headFiles.get(fileName));
+                } else {
+                    deleteWorkingFile(fileName);
+                }
+            }
+            stagingArea.clear();
+            Utils.writeObjectAtomically(STAGING_AREA_FILE, stagingArea);
+            System.out.println("Saved working directory and index state " + message);
+        }));
+    }
+
+    // stash pop [N]: rewrite the paths of stash entry N and restore its staging area
+    public void stashPop(int index) {
+        report(() -> write(() -> {
+            Stash stash = Stash.load();
+            Stash.Entry entry = stash.get(index);
+            Commit stashCommit = Commit.loadCommit(entry.getCommitID());
+            Map<String, String> files = stashCommit.getFilePointers();
+            Map<String, String> baseFiles = Commit.loadCommit(stashCommit.getParent()).getFilePointers();
+            Set<String> stashed = CommitGraph.changedPaths(baseFiles, files);
+            stashed.addAll(entry.getStagedFiles().keySet());
+            stashed.addAll(entry.getRemovedFiles());
+
+            // Popping writes the stashed versions over whatever HEAD has, so a path
+            // committed since the stash was made would silently lose that commit
+            Map<String, String> headFiles = head == null
+                    ? new TreeMap<>() : Commit.loadCommit(head).getFilePointers();
+            for (String fileName : stashed) {
+                if (!Objects.equals(baseFiles.get(fileName), headFiles.get(fileName))) {
+                    throw Utils.error("%s has changed since it was stashed; cannot pop the stash.", fileName);
+                }
+            }
+
+            SparseCheckout sparse = SparseCheckout.load();
+            WorkingTree workingTree = workingTree(sparse);
+            for (String fileName : stashed) {
+                if (workingTree.getUnstagedChanges().containsKey(fileName)
+                        || workingTree.getUntrackedFiles().contains(fileName)
+                        || stagingArea.getAddedFiles().containsKey(fileName)
+                        || stagingArea.getRemovedFiles().contains(fileName)) {
+                    throw Utils.error("Your local changes to %s would be overwritten by stash pop.", fileName);
+                }
+            }
+
+            for (String fileName : stashed) {
+                if (!sparse.matches(fileName)) {
+                    continue;
+                }
+                if (files.containsKey(fileName)) {
+                    writeWorkingFile(fileName, files.get(fileName));
+                } else {
+                    deleteWorkingFile(fileName);
+                }
+            }
+            entry.getStagedFiles().forEach(stagingArea::addFile);
+            entry.getRemovedFiles().forEach(stagingArea::removeFile);
+            Utils.writeObjectAtomically(STAGING_AREA_FILE, stagingArea);
+            stash.remove(index);
+            stash.save();
+            System.out.println("Dropped stash@{" + index + "} (" + entry.getCommitID() + ")");
+        }));
+    }
+
+    public void stashList() {
+        read(() -> {
+            List<Stash.Entry> entries = Stash.load().getEntries();
+            for (int i = 0; i < entries.size(); i++) {
+                Commit stashCommit = Commit.loadCommit(entries.get(i).getCommitID());
+                System.out.println("stash@{" + i + "}: " + stashCommit.getMessage());
+            }
+        });
+    }
+
+    public void stashDrop(int index) {
+        report(() -> write(() -> {
+            Stash stash = Stash.load();
+            Stash.Entry entry = stash.remove(index);
+            stash.save();
+            System.out.println("Dropped stash@{" + index + "} (" + entry.getCommitID() + ")");
+        }));
+    }
+
+    // reflog [branch]: list the moves of a branch, newest first
+    public void reflog(String branchName) {
+        report(() -> read(() -> {
+            List<String> entries = RefStore.of(GITLET_DIR).reflog(branchName);
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                // Each entry is "<old> <new> <millis> <message>"
+                String[] parts = entries.get(i).split(" ", 4);
+                System.out.println(parts[1] + " " + branchName + "@{" + (entries.size() - 1 - i) + "}: " + parts[3]);
+            }
+        }));
+    }
+
+    // archive: write the files of a branch or commit as a tar or zip archive to OUTPUTPATH,
+    // or to standard output if it is null
+    public void archive(String revision, String format, String outputPath) {
+        report(() -> read(() -> {
+            if (!Archive.isFormat(format)) {
+                throw Utils.error("Unknown archive format: %s", format);
+            }
+            String commitID = branches.getOrDefault(revision, revision);
+            if (commitID == null || !Utils.join(COMMITS_DIR, commitID).exists()) {
+                throw Utils.error("No commit with that id exists.");
+            }
+            Archive archive = new Archive(Commit.loadCommit(commitID));
+            try {
+                if (outputPath == null) {
+                    archive.write(format, System.out);
+                } else {
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputPath))) {
+                        archive.write(format, out);
+                    }
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write archive: %s", excp.getMessage());
+            }
+        }));
+    }
+
+    // fast-import: read commits, blobs and branch updates from standard input
+    public void fastImport() {
+        report(() -> write(() -> {
+            long start = System.nanoTime();
+            CommitGraph graph = CommitGraph.load();
+            FastImport importer = new FastImport(graph, getBranches());
+            Map<String, String> updated;
+            try {
+                updated = importer.run(System.in);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot import: %s", excp.getMessage());
+            }
+            graph.save();
+
+            // Branches are only moved once everything they point to is on disk
+            RefStore.of(GITLET_DIR).update(updated, "fast-import");
+            branches.putAll(updated);
+            head = branches.get(currentBranch);
+
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            int objects = importer.getBlobsImported() + importer.getCommitsImported();
+            System.out.printf("Imported %d blobs and %d commits (%.1f MiB) in %.2f s: %.0f objects/s, %.1f MiB/s.%n",
+                    importer.getBlobsImported(), importer.getCommitsImported(),
+                    importer.getBytesImported() / 1048576.0, seconds, objects / seconds,
+                    importer.getBytesImported() / 1048576.0 / seconds);
+        }));
+    }
+
+    // gc: delete commits and blobs unreachable from every branch, stash and the staging area
+    public void gc(long graceMillis) {
+        write(() -> {
+            CommitGraph graph = CommitGraph.load();
+            GarbageCollector collector = new GarbageCollector(graph);
+            Stash stash = Stash.load();
+            List<String> roots = new ArrayList<>(branches.values());
+            roots.addAll(stash.getCommits());
+            List<String> stagedBlobs = new ArrayList<>(stagingArea.getAddedFiles().values());
+            stagedBlobs.addAll(stash.getStagedBlobs());
+            collector.mark(roots, stagedBlobs);
+            collector.sweep(graceMillis);
+            graph.save();
+
+            System.out.println("Removed " + collector.getCommitsRemoved() + " commits and "
+                    + collector.getBlobsRemoved() + " blobs, reclaimed "
+                    + collector.getBytesReclaimed() + " bytes.");
+        });
+    }
+
+    // fsck: re-hash every object and check that all references resolve
+    public void fsck() {
+        read(() -> {
+            Fsck fsck = new Fsck();
+            List<String> problems = fsck.check(branches);
+            problems.forEach(System.out::println);
+            System.out.println("Checked " + fsck.getCommitsChecked() + " commits and "
+                    + fsck.getBlobsChecked() + " blobs, found " + problems.size() + " problems.");
+        });
+    }
+
+    // add-remote [remote name] [path to remote .gitlet]
+    public void addRemote(String remoteName, String path) {
+        write(() -> {
+            Map<String, String> remotes = readRemotes();
+            if (remotes.containsKey(remoteName)) {
+                System.out.println("A remote with that name already exists.");
+                return;
+            }
+            remotes.put(remoteName, path.replace("/", File.separator));
+            Utils.writeObject(REMOTES_FILE, new TreeMap<>(remotes));
+        });
+    }
+
+    public void rmRemote(String remoteName) {
+        write(() -> {
+            Map<String, String> remotes = readRemotes();
+            if (remotes.remove(remoteName) == null) {
+                System.out.println("A remote with that name does not exist.");
+                return;
+            }
+            Utils.writeObject(REMOTES_FILE, new TreeMap<>(remotes));
+        });
+    }
+
+    // fetch [remote name] [remote branch name]: copy the branch into [remote name]/[branch]
+    public void fetch(String remoteName, String remoteBranch) {
+        report(() -> fetchBranch(remoteName, remoteBranch));
+    }
+
+    // Fetch, letting a failed transfer propagate to the caller
+    private void fetchBranch(String remoteName, String remoteBranch) {
+        File remoteDir = remoteDir(remoteName);
+        if (remoteDir == null) {
+            return;
+        }
+        String localBranch = remoteName + "/" + remoteBranch;
+        if (!RefStore.isValidName(localBranch)) {
+            System.out.println("Invalid branch name.");
+            return;
+        }
+        String remoteHead = RefStore.of(remoteDir).get(remoteBranch);
+        if (remoteHead == null) {
+            System.out.println("That remote does not have that branch.");
             return;
         }
 
-        Commit targetCommit = Commit.loadCommit(commitID);
-
-        // Clear current working directory
-        Utils.plainFilenamesIn(CWD).forEach(fileName -> Utils.restrictedDelete(Utils.join(CWD, fileName)));
+        write(() -> {
+            new ObjectTransfer(remoteDir, GITLET_DIR).send(remoteHead);
+            moveBranch(localBranch, remoteHead, "fetch: " + remoteName + " " + remoteBranch);
+        });
+    }
 
-        // Restore files from the target commit
-        targetCommit.getFilePointers().forEach((fileName, blobHash) -> {
-            File blobFile = Utils.join(BLOBS_DIR, blobHash);
-            Utils.writeContents(Utils.join(CWD, fileName), Utils.readContents(blobFile));
+    // push [remote name] [remote branch name]: fast-forward the remote branch to HEAD
+    public void push(String remoteName, String remoteBranch) {
+        report(() -> {
+            File remoteDir = remoteDir(remoteName);
+            if (remoteDir == null) {
+                return;
+            }
+            if (head == null) {
+                System.out.println("No commits exist yet.");
+                return;
+            }
+            if (!RefStore.isValidName(remoteBranch)) {
+                System.out.println("Invalid branch name.");
+                return;
+            }
+            String localHead = head;
+            RepositoryLock remoteLock = RepositoryLock.of(remoteDir);
+            remoteLock.acquire();
+            try {
+                RefStore remoteRefs = RefStore.of(remoteDir);
+                String remoteHead = remoteRefs.get(remoteBranch);
+
+                ObjectTransfer transfer = new ObjectTransfer(GITLET_DIR, remoteDir);
+                if (remoteHead != null && !transfer.isAncestor(remoteHead, localHead)) {
+                    System.out.println("Please pull down remote changes before pushing.");
+                    return;
+                }
+                transfer.send(localHead);
+                remoteRefs.update(remoteBranch, remoteHead, localHead, "push");
+            } finally {
+                remoteLock.release();
+            }
         });
+    }
+
+    // pull [remote name] [remote branch name]: fetch, then merge the fetched branch
+    public void pull(String remoteName, String remoteBranch) {
+        report(() -> write(() -> {
+            fetchBranch(remoteName, remoteBranch);
+            String fetched = remoteName + "/" + remoteBranch;
+            if (branches.get(fetched) != null) {
+                merge(fetched);
+            }
+        }));
+    }
+
+    private Map<String, String> readRemotes() {
+        if (!REMOTES_FILE.exists()) {
+            return new TreeMap<>();
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> remotes = Utils.readObject(REMOTES_FILE, TreeMap.class);
+        return remotes;
+    }
+
+    /** Clone the repository in SOURCEDIR (a .gitlet directory) into the
+     *  current directory. Immutable objects are hard-linked where possible;
+     *  with PARTIAL, blobs are left behind and fetched on first access. */
+    public static void cloneFrom(File sourceDir, boolean partial) {
+        GITLET_DIR.mkdir();
+        COMMITS_DIR.mkdir();
+        BLOBS_DIR.mkdir();
+        HashAlgorithm.save(GITLET_DIR, HashAlgorithm.of(sourceDir));
+        File sourceCommits = Utils.join(sourceDir, "commits");
+        for (String commitID : Utils.plainFilenamesIn(sourceCommits)) {
+            ObjectTransfer.linkOrCopy(Utils.join(sourceCommits, commitID), Utils.join(COMMITS_DIR, commitID));
+        }
+        if (partial) {
+            Utils.writeContents(PROMISOR_FILE, sourceDir.getAbsolutePath());
+        } else {
+            File sourceBlobs = Utils.join(sourceDir, "blobs");
+            for (String blobHash : Utils.plainFilenamesIn(sourceBlobs)) {
+                ObjectTransfer.linkOrCopy(Utils.join(sourceBlobs, blobHash), Utils.join(BLOBS_DIR, blobHash));
+            }
+        }
 
-        // Update head to point to the target commit
-        head = commitID;
-        branches.put(currentBranch, head);
-        saveHeadAndBranch();
+        // Mutable state is rewritten in place later, so it must be copied rather than linked
+        RefStore.of(GITLET_DIR).update(RefStore.of(sourceDir).read(), "clone: from " + sourceDir);
+        File sourceHead = Utils.join(sourceDir, "HEAD");
+        if (sourceHead.exists()) {
+            Utils.writeContents(HEAD_FILE, Utils.readContents(sourceHead));
+        }
+        CommitGraph.load(sourceDir).saveTo(GITLET_DIR);
+        TreeMap<String, String> remotes = new TreeMap<>();
+        remotes.put("origin", sourceDir.getAbsolutePath());
+        Utils.writeObject(REMOTES_FILE, remotes);
+
+        Repository repo = new Repository();
+        if (repo.head != null) {
+            Commit.loadCommit(repo.head).getFilePointers().forEach(Repository::writeWorkingFile);
+        }
+    }
+
+    // Returns the .gitlet directory of REMOTENAME, or null after reporting why not
+    private File remoteDir(String remoteName) {
+        String path = readRemotes().get(remoteName);
+        if (path == null) {
+            System.out.println("A remote with that name does not exist.");
+            return null;
+        }
+        File remoteDir = new File(path).isAbsolute() ? new File(path) : Utils.join(CWD, path);
+        if (!remoteDir.getName().equals(".gitlet")) {
+            remoteDir = Utils.join(remoteDir, ".gitlet");
+        }
+        if (!remoteDir.isDirectory()) {
+            System.out.println("Remote directory not found.");
+            return null;
+        }
+        if (HashAlgorithm.of(remoteDir) != HashAlgorithm.current()) {
+            System.out.println("Remote uses a different hash algorithm.");
+            return null;
+        }
+        return remoteDir;
+    }
+
+    public void reset(String commitID) {
+        report(() -> write(() -> {
+            File commitFile = Utils.join(COMMITS_DIR, commitID);
+            if (!commitFile.exists()) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+
+            Commit targetCommit = Commit.loadCommit(commitID);
+
+            // Replace the working files with those of the target commit
+            materialize(targetCommit);
+
+            // Update head to point to the target commit
+            head = commitID;
+            moveBranch(currentBranch, head, "reset: moving to " + commitID);
+
+            stagingArea.clear();
+            Utils.writeObjectAtomically(STAGING_AREA_FILE, stagingArea);
+        }));
+    }
 
-        stagingArea.clear();
-        Utils.writeObject(STAGING_AREA_FILE, stagingArea);
+    // watch: journal working-tree changes for status until stopped
+    public void watch() {
+        report(Watcher::run);
     }
 
 
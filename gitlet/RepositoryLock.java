@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Serializes writers to one repository, among the threads of this process
+ *  and across gitlet processes, by holding an OS lock on .gitlet/lock. The
+ *  lock is reentrant; the file lock is taken by the outermost acquire only.
+ *
+ *  @author xxr
+ */
+class RepositoryLock {
+    private static final Map<String, RepositoryLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final File lockFile;
+    private final ReentrantLock threadLock = new ReentrantLock();
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    private RepositoryLock(File lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    // The lock of the repository in GITLETDIR
+    static RepositoryLock of(File gitletDir) {
+        File lockFile = Utils.join(gitletDir, "lock").getAbsoluteFile();
+        return LOCKS.computeIfAbsent(lockFile.getPath(), path -> new RepositoryLock(lockFile));
+    }
+
+    // Block until this thread holds the lock
+    void acquire() {
+        threadLock.lock();
+        if (threadLock.getHoldCount() > 1) {
+            return;
+        }
+        try {
+            channel = FileChannel.open(lockFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileLock = channel.lock();
+        } catch (IOException excp) {
+            threadLock.unlock();
+            throw Utils.error("Cannot lock repository: %s", excp.getMessage());
+        }
+    }
+
+    void release() {
+        try {
+            if (threadLock.getHoldCount() == 1) {
+                fileLock.release();
+                channel.close();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot unlock repository: %s", excp.getMessage());
+        } finally {
+            threadLock.unlock();
+        }
+    }
+}
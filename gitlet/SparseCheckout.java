@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The set of paths materialized in the working directory when sparse
+ *  checkout is enabled. Patterns are directory cones stored one per line in
+ *  .gitlet/sparse-checkout: "dir" includes everything below dir, "!dir"
+ *  excludes it again, and the most specific cone wins. Files at the top
+ *  level are always included. Matching only looks up the directory prefixes
+ *  of a path, so it costs one hash probe per path component.
+ *
+ *  @author xxr
+ */
+public class SparseCheckout {
+    static final File SPARSE_FILE = Utils.join(Repository.GITLET_DIR, "sparse-checkout");
+
+    private final List<String> patterns;
+    private final Map<String, Boolean> cones; // null when every path is included
+
+    private SparseCheckout(List<String> patterns) {
+        this.patterns = patterns;
+        if (patterns == null) {
+            this.cones = null;
+            return;
+        }
+        this.cones = new HashMap<>();
+        for (String pattern : patterns) {
+            boolean include = !pattern.startsWith("!");
+            cones.put(normalize(include ? pattern : pattern.substring(1)), include);
+        }
+    }
+
+    // The sparse checkout settings of the current repository
+    public static SparseCheckout load() {
+        if (!SPARSE_FILE.exists()) {
+            return new SparseCheckout(null);
+        }
+        List<String> patterns = new ArrayList<>();
+        for (String line : Utils.readContentsAsString(SPARSE_FILE).split("\n")) {
+            if (!line.trim().isEmpty()) {
+                patterns.add(line.trim());
+            }
+        }
+        return new SparseCheckout(patterns);
+    }
+
+    // The settings PATTERNS would give, null for none, without saving them
+    public static SparseCheckout of(List<String> patterns) {
+        checkPatterns(patterns);
+        return new SparseCheckout(patterns);
+    }
+
+    // Enable sparse checkout with PATTERNS, or disable it if PATTERNS is null
+    public static SparseCheckout save(List<String> patterns) {
+        checkPatterns(patterns);
+        if (patterns == null) {
+            SPARSE_FILE.delete();
+        } else {
+            Utils.writeContents(SPARSE_FILE, String.join("\n", patterns) + "\n");
+        }
+        return new SparseCheckout(patterns);
+    }
+
+    public boolean isEnabled() {
+        return cones != null;
+    }
+
+    public List<String> getPatterns() {
+        return patterns == null ? new ArrayList<>() : patterns;
+    }
+
+    // True if the working copy of FILENAME is part of the checkout
+    public boolean matches(String fileName) {
+        if (cones == null) {
+            return true;
+        }
+        int slash = fileName.lastIndexOf('/');
+        while (slash > 0) {
+            Boolean included = cones.get(fileName.substring(0, slash));
+            if (included != null) {
+                return included;
+            }
+            slash = fileName.lastIndexOf('/', slash - 1);
+        }
+        return fileName.indexOf('/') < 0;
+    }
+
+    // Every pattern must name a directory inside the repository, optionally
+    // behind a "!" and with trailing slashes
+    private static void checkPatterns(List<String> patterns) {
+        if (patterns == null) {
+            return;
+        }
+        for (String pattern : patterns) {
+            String dir = pattern.startsWith("!") ? pattern.substring(1) : pattern;
+            dir = dir.replace(File.separatorChar, '/');
+            while (dir.endsWith("/")) {
+                dir = dir.substring(0, dir.length() - 1);
+            }
+            boolean valid = !dir.isEmpty() && !dir.startsWith("/") && !new File(dir).isAbsolute()
+                    && dir.equals(dir.trim()) && dir.chars().noneMatch(Character::isISOControl);
+            for (String segment : dir.split("/", -1)) {
+                valid &= !segment.isEmpty() && !segment.equals(".") && !segment.equals("..");
+            }
+            if (!valid) {
+                throw Utils.error("Invalid sparse-checkout pattern: %s", pattern);
+            }
+        }
+    }
+
+    private static String normalize(String pattern) {
+        String dir = pattern.replace(File.separatorChar, '/');
+        while (dir.endsWith("/")) {
+            dir = dir.substring(0, dir.length() - 1);
+        }
+        return dir.startsWith("/") ? dir.substring(1) : dir;
+    }
+}
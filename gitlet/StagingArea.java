@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.util.*;
 
 public class StagingArea implements Serializable {
+    private static final long serialVersionUID = -8871997009025724767L;
+
     private Map<String, String> addedFiles; // Track file names to blob hashes
     private Set<String> removedFiles; // Track file names staged for removal
 
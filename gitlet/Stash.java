@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** The stack of stashed changes, newest first, in .gitlet/stash. Each entry
+ *  is an ordinary commit whose parent is the HEAD it was stashed on and
+ *  whose files are the working tree at the time, plus the staging area,
+ *  which refers to blobs by hash like everything else.
+ *
+ *  @author xxr
+ */
+public class Stash implements Serializable {
+    private static final long serialVersionUID = -2795614290162983208L;
+
+    static final File STASH_FILE = Utils.join(Repository.GITLET_DIR, "stash");
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /** One stashed change. */
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 2007781807375430408L;
+
+        private final String commitID;
+        private final Map<String, String> stagedFiles;
+        private final Set<String> removedFiles;
+
+        Entry(String commitID, Map<String, String> stagedFiles, Set<String> removedFiles) {
+            this.commitID = commitID;
+            this.stagedFiles = new TreeMap<>(stagedFiles);
+            this.removedFiles = new HashSet<>(removedFiles);
+        }
+
+        public String getCommitID() {
+            return commitID;
+        }
+
+        public Map<String, String> getStagedFiles() {
+            return Collections.unmodifiableMap(stagedFiles);
+        }
+
+        public Set<String> getRemovedFiles() {
+            return Collections.unmodifiableSet(removedFiles);
+        }
+    }
+
+    public static Stash load() {
+        if (!STASH_FILE.exists()) {
+            return new Stash();
+        }
+        return Utils.readObject(STASH_FILE, Stash.class);
+    }
+
+    public void save() {
+        Utils.writeObjectAtomically(STASH_FILE, this);
+    }
+
+    public void push(Entry entry) {
+        entries.add(0, entry);
+    }
+
+    // The entry at INDEX, 0 being the newest
+    public Entry get(int index) {
+        if (index < 0 || index >= entries.size()) {
+            throw Utils.error("No stash entry found.");
+        }
+        return entries.get(index);
+    }
+
+    public Entry remove(int index) {
+        Entry entry = get(index);
+        entries.remove(index);
+        return entry;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    // Commits to keep alive in gc
+    public List<String> getCommits() {
+        List<String> commits = new ArrayList<>();
+        entries.forEach(entry -> commits.add(entry.commitID));
+        return commits;
+    }
+
+    // Staged blobs to keep alive in gc; they need not be in the stash commits
+    public List<String> getStagedBlobs() {
+        List<String> blobs = new ArrayList<>();
+        entries.forEach(entry -> blobs.addAll(entry.stagedFiles.values()));
+        return blobs;
+    }
+}
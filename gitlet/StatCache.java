@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Remembers the size and modification time of every working file, and
+ *  the blob hash of those that were compared, as of the last status, in
+ *  .gitlet/stat-cache. Files whose stat data is unchanged need not be read
+ *  and hashed again. A file modified no earlier than the cache was written
+ *  is always re-hashed, since a later change within the same timestamp tick
+ *  would otherwise go unnoticed. With a Watcher running, the cache also
+ *  holds its token, and only the paths changed since then are stat'ed.
+ *
+ *  @author xxr
+ */
+public class StatCache implements Serializable {
+    private static final long serialVersionUID = 9062069984077593217L;
+
+    static final File CACHE_FILE = Utils.join(Repository.GITLET_DIR, "stat-cache");
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private long writtenAt;
+    private String watchToken;
+
+    /** Cached data about one working file. */
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = -428849981332342268L;
+
+        private final long size;
+        private final long modified;
+        private final String blobHash; // null until the file is compared
+
+        Entry(long size, long modified, String blobHash) {
+            this.size = size;
+            this.modified = modified;
+            this.blobHash = blobHash;
+        }
+    }
+
+    public static StatCache load() {
+        if (!CACHE_FILE.exists()) {
+            return new StatCache();
+        }
+        try {
+            return Utils.readObject(CACHE_FILE, StatCache.class);
+        } catch (IllegalArgumentException excp) {
+            return new StatCache(); // a damaged cache only costs a rehash
+        }
+    }
+
+    public void save() {
+        writtenAt = System.currentTimeMillis();
+        Utils.writeObjectAtomically(CACHE_FILE, this);
+    }
+
+    // The blob hash of working file FILENAME with stat data STAT, hashing it only if needed
+    public String hash(String fileName, WorkingTree.FileStat stat) {
+        Entry entry = entries.get(fileName);
+        if (entry != null && entry.blobHash != null && entry.size == stat.getSize()
+                && entry.modified == stat.getModified() && stat.getModified() < writtenAt) {
+            return entry.blobHash;
+        }
+        String blobHash = Blob.hashOf(Utils.join(Repository.CWD, fileName));
+        entries.put(fileName, new Entry(stat.getSize(), stat.getModified(), blobHash));
+        return blobHash;
+    }
+
+    // The working files as of the last save
+    public Map<String, WorkingTree.FileStat> getFiles() {
+        Map<String, WorkingTree.FileStat> files = new TreeMap<>();
+        entries.forEach((fileName, entry) ->
+                files.put(fileName, new WorkingTree.FileStat(entry.size, entry.modified)));
+        return files;
+    }
+
+    // Record WORKINGFILES as the current working files
+    public void update(Map<String, WorkingTree.FileStat> workingFiles) {
+        entries.keySet().retainAll(workingFiles.keySet());
+        workingFiles.forEach((fileName, stat) -> {
+            Entry entry = entries.get(fileName);
+            if (entry == null || entry.size != stat.getSize() || entry.modified != stat.getModified()) {
+                entries.put(fileName, new Entry(stat.getSize(), stat.getModified(), null));
+            }
+        });
+    }
+
+    public String getWatchToken() {
+        return watchToken;
+    }
+
+    public void setWatchToken(String watchToken) {
+        this.watchToken = watchToken;
+    }
+}
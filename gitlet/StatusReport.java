@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The result of status: branches, files staged for addition or removal,
+ *  unstaged changes and untracked files, each in sorted order.
+ *
+ *  @author xxr
+ */
+public class StatusReport {
+    private final List<String> branches;
+    private final String currentBranch;
+    private final List<String> stagedFiles;
+    private final List<String> removedFiles;
+    private final Map<String, String> unstagedChanges;
+    private final List<String> untrackedFiles;
+
+    StatusReport(Collection<String> branches, String currentBranch,
+                 Collection<String> stagedFiles, Collection<String> removedFiles,
+                 Map<String, String> unstagedChanges, Collection<String> untrackedFiles) {
+        this.branches = sorted(branches);
+        this.currentBranch = currentBranch;
+        this.stagedFiles = sorted(stagedFiles);
+        this.removedFiles = sorted(removedFiles);
+        this.unstagedChanges = Collections.unmodifiableMap(new TreeMap<>(unstagedChanges));
+        this.untrackedFiles = sorted(untrackedFiles);
+    }
+
+    private static List<String> sorted(Collection<String> names) {
+        List<String> result = new ArrayList<>(names);
+        Collections.sort(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    public List<String> getBranches() {
+        return branches;
+    }
+
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    public List<String> getStagedFiles() {
+        return stagedFiles;
+    }
+
+    public List<String> getRemovedFiles() {
+        return removedFiles;
+    }
+
+    // Modified or deleted files whose change is not staged, mapped to "modified" or "deleted"
+    public Map<String, String> getUnstagedChanges() {
+        return unstagedChanges;
+    }
+
+    public List<String> getUntrackedFiles() {
+        return untrackedFiles;
+    }
+}
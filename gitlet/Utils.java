@@ -6,17 +6,22 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
+import java.util.stream.IntStream;
 
 
 /** Assorted utilities.
@@ -47,11 +52,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return ObjectId.toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -63,6 +64,103 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /* OBJECT HASHES */
+
+    /** Contents longer than this are hashed as a tree of chunks, in
+     *  repositories whose hash algorithm is chunked. */
+    static final int HASH_CHUNK_SIZE = 1 << 22;
+
+    /** Returns the hash of the concatenation of VALS, which may be any
+     *  mixture of byte arrays and Strings, under the hash algorithm of the
+     *  current repository. */
+    static String hash(Object... vals) {
+        MessageDigest md = HashAlgorithm.current().newDigest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+        }
+        return ObjectId.toHex(md.digest());
+    }
+
+    /** Returns the ID of a blob whose contents are DATA. If the hash
+     *  algorithm is chunked, contents longer than HASH_CHUNK_SIZE are split
+     *  into chunks that are hashed in parallel, and the ID is the hash of
+     *  the length and chunk hashes. */
+    static String hashContents(byte[] data) {
+        HashAlgorithm algorithm = HashAlgorithm.current();
+        if (data.length <= HASH_CHUNK_SIZE || !algorithm.isChunked()) {
+            return ObjectId.toHex(algorithm.newDigest().digest(data));
+        }
+        byte[][] chunkHashes = new byte[chunkCount(data.length)][];
+        IntStream.range(0, chunkHashes.length).parallel().forEach(i -> {
+            MessageDigest md = algorithm.newDigest();
+            int start = i * HASH_CHUNK_SIZE;
+            md.update(data, start, Math.min(HASH_CHUNK_SIZE, data.length - start));
+            chunkHashes[i] = md.digest();
+        });
+        return combineChunks(algorithm, data.length, chunkHashes);
+    }
+
+    /** Returns the ID of a blob whose contents are in FILE, as for
+     *  hashContents(byte[]), reading the file in pieces so that it never
+     *  sits in memory whole.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static String hashContents(File file) {
+        HashAlgorithm algorithm = HashAlgorithm.current();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length <= HASH_CHUNK_SIZE || !algorithm.isChunked()) {
+                MessageDigest md = algorithm.newDigest();
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+                return ObjectId.toHex(md.digest());
+            }
+            byte[][] chunkHashes = new byte[chunkCount(length)][];
+            IntStream.range(0, chunkHashes.length).parallel().forEach(i -> {
+                MessageDigest md = algorithm.newDigest();
+                long start = (long) i * HASH_CHUNK_SIZE;
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(HASH_CHUNK_SIZE, length - start));
+                try {
+                    int count;
+                    do {
+                        count = channel.read(buffer, start + buffer.position());
+                    } while (count > 0 && buffer.hasRemaining());
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+                buffer.flip();
+                md.update(buffer);
+                chunkHashes[i] = md.digest();
+            });
+            return combineChunks(algorithm, length, chunkHashes);
+        } catch (IOException | UncheckedIOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static int chunkCount(long length) {
+        return (int) ((length + HASH_CHUNK_SIZE - 1) / HASH_CHUNK_SIZE);
+    }
+
+    private static String combineChunks(HashAlgorithm algorithm, long length,
+                                        byte[][] chunkHashes) {
+        MessageDigest md = algorithm.newDigest();
+        md.update(("chunked " + length + "\0").getBytes(StandardCharsets.UTF_8));
+        for (byte[] chunkHash : chunkHashes) {
+            md.update(chunkHash);
+        }
+        return ObjectId.toHex(md.digest());
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -136,6 +234,24 @@ class Utils {
         }
     }
 
+    /** As for writeContents, but readers of FILE see either its old or its
+     *  new contents and never a partial write: the contents go to a
+     *  temporary file in the same directory that is then renamed over FILE. */
+    static void writeContentsAtomically(File file, Object... contents) {
+        File temp = new File(file.getParentFile(),
+                             file.getName() + "." + ProcessHandle.current().pid()
+                             + "-" + Thread.currentThread().getId() + ".tmp");
+        writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -157,6 +273,11 @@ class Utils {
         writeContents(file, serialize(obj));
     }
 
+    /** Write OBJ to FILE as for writeContentsAtomically. */
+    static void writeObjectAtomically(File file, Serializable obj) {
+        writeContentsAtomically(file, serialize(obj));
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */
@@ -0,0 +1,298 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/** An optional daemon that watches the working directory and appends every
+ *  changed path to .gitlet/watch-journal, so that status need not stat the
+ *  whole tree. The journal starts with a generation line; a token names a
+ *  generation and a byte offset into it. A reader gets the paths changed
+ *  since its last token, or is told to scan everything when no watcher
+ *  holds .gitlet/watch-lock, the generation has changed, or events were
+ *  lost to an overflow.
+ *
+ *  Before reading, a client creates a cookie file in .gitlet and waits
+ *  for the watcher to journal it, so every change made before the call is
+ *  already in the journal.
+ *
+ *  @author xxr
+ */
+public class Watcher {
+    static final File JOURNAL_FILE = Utils.join(Repository.GITLET_DIR, "watch-journal");
+    private static final File LOCK_FILE = Utils.join(Repository.GITLET_DIR, "watch-lock");
+    private static final String HEADER = "gitlet-watch ";
+    private static final String OVERFLOW = "!overflow";
+    private static final String COOKIE = "!cookie ";
+    private static final String COOKIE_PREFIX = "watch-cookie-";
+    private static final long COOKIE_TIMEOUT_MILLIS = 2000;
+    // A journal this large is replaced by a new generation, costing each client one full scan
+    private static final long MAX_JOURNAL_SIZE = 1 << 22;
+
+    private final Path root = Repository.CWD.toPath().toAbsolutePath();
+    private final Path gitletDir = Repository.GITLET_DIR.toPath().toAbsolutePath();
+    private final Map<WatchKey, Path> dirs = new HashMap<>();
+    private WatchService service;
+    private OutputStream journal;
+    private long journalSize;
+
+    /** The answer to changesSince. */
+    public static class Changes {
+        private final String token;
+        private final Set<String> paths;
+
+        Changes(String token, Set<String> paths) {
+            this.token = token;
+            this.paths = paths;
+        }
+
+        // The token to pass next time, or null if no watcher is running
+        public String getToken() {
+            return token;
+        }
+
+        // Paths changed since the previous token, or null if the whole tree must be scanned
+        public Set<String> getPaths() {
+            return paths;
+        }
+    }
+
+    private Watcher() {
+    }
+
+    /** Watch the working directory until the process is stopped. */
+    public static void run() {
+        try (FileChannel channel = FileChannel.open(LOCK_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                throw Utils.error("A watcher is already running.");
+            }
+            new Watcher().watch();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot watch %s: %s", Repository.CWD, excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() throws IOException, InterruptedException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            service = watchService;
+            startGeneration();
+            register(gitletDir); // for cookies only
+            registerTree(root, false);
+            System.out.println("Watching " + root + "; press Ctrl-C to stop.");
+            while (true) {
+                WatchKey key = service.take();
+                do {
+                    handle(key);
+                    key = service.poll();
+                } while (key != null);
+                journal.flush();
+                if (journalSize > MAX_JOURNAL_SIZE) {
+                    startGeneration();
+                }
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    // Replace the journal with an empty one under a fresh generation
+    private void startGeneration() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        String header = HEADER + UUID.randomUUID() + "\n";
+        Utils.writeContentsAtomically(JOURNAL_FILE, header);
+        journal = new BufferedOutputStream(new FileOutputStream(JOURNAL_FILE, true));
+        journalSize = header.length();
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path dir = dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, possibly including new directories to watch
+                append(OVERFLOW);
+                registerTree(root, false);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (dir.equals(gitletDir)) {
+                String name = path.getFileName().toString();
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && name.startsWith(COOKIE_PREFIX)) {
+                    append(COOKIE + name);
+                }
+            } else if (!path.equals(gitletDir)) {
+                append(relative(path));
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    // Files may have appeared in it before it was registered
+                    registerTree(path, true);
+                }
+            }
+        }
+        if (!key.reset()) {
+            dirs.remove(key);
+        }
+    }
+
+    // Watch every directory below START, journaling its contents if JOURNALFILES
+    private void registerTree(Path start, boolean journalFiles) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(gitletDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                register(dir);
+                if (journalFiles && !dir.equals(start)) {
+                    append(relative(dir));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (journalFiles) {
+                    append(relative(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException excp) {
+                return FileVisitResult.CONTINUE; // already gone
+            }
+        });
+    }
+
+    private void register(Path dir) throws IOException {
+        dirs.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+    }
+
+    private String relative(Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private void append(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        journal.write(bytes);
+        journalSize += bytes.length;
+    }
+
+    /** The paths changed since TOKEN, which may be null, as reported by the
+     *  running watcher. */
+    public static Changes changesSince(String token) {
+        if (!isRunning()) {
+            return new Changes(null, null);
+        }
+        String cookieName = COOKIE_PREFIX + ProcessHandle.current().pid() + "-"
+                + Thread.currentThread().getId() + "-" + System.nanoTime();
+        File cookie = Utils.join(Repository.GITLET_DIR, cookieName);
+        try {
+            Utils.writeContents(cookie, "");
+            long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT_MILLIS;
+            while (System.currentTimeMillis() < deadline) {
+                Changes changes = readJournal(Utils.readContents(JOURNAL_FILE), COOKIE + cookieName, token);
+                if (changes != null) {
+                    return changes;
+                }
+                Thread.sleep(5);
+            }
+        } catch (IllegalArgumentException excp) {
+            // The journal vanished or was being replaced
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cookie.delete();
+        }
+        return new Changes(null, null);
+    }
+
+    private static boolean isRunning() {
+        if (!LOCK_FILE.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(LOCK_FILE.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException excp) {
+            return true; // the watcher runs in this process
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    // The changes in JOURNAL between TOKEN and COOKIELINE, or null if that line is not there yet
+    private static Changes readJournal(byte[] journal, String cookieLine, String token) {
+        int headerEnd = indexOf(journal, 0);
+        if (headerEnd < 0) {
+            return null;
+        }
+        String header = new String(journal, 0, headerEnd, StandardCharsets.UTF_8);
+        String generation = header.substring(HEADER.length()) + ":";
+        int start = headerEnd + 1;
+        if (token != null && token.startsWith(generation)) {
+            start = Math.max(start, Integer.parseInt(token.substring(generation.length())));
+        }
+
+        Set<String> paths = new TreeSet<>();
+        boolean overflowed = false;
+        for (int lineStart = start, lineEnd; (lineEnd = indexOf(journal, lineStart)) >= 0;
+             lineStart = lineEnd + 1) {
+            String line = new String(journal, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            if (line.equals(cookieLine)) {
+                String next = generation + (lineEnd + 1);
+                boolean complete = token != null && token.startsWith(generation) && !overflowed;
+                return new Changes(next, complete ? paths : null);
+            } else if (line.equals(OVERFLOW)) {
+                overflowed = true;
+            } else if (!line.startsWith(COOKIE)) {
+                paths.add(line);
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
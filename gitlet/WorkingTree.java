@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Compares the working directory with the HEAD commit and the staging
+ *  area. The directory tree is walked recursively in parallel, one
+ *  fork-join task per directory, unless a Watcher can name the paths that
+ *  changed since the last walk. File contents are only hashed when the
+ *  StatCache cannot vouch for them.
+ *
+ *  @author xxr
+ */
+public class WorkingTree {
+    private final Map<String, String> unstagedChanges = new TreeMap<>();
+    private final Set<String> untrackedFiles = new TreeSet<>();
+    private final StatCache cache;
+
+    /** Size and modification time of a working file. */
+    public static class FileStat {
+        private final long size;
+        private final long modified;
+
+        FileStat(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+    }
+
+    /** Compute the changes between the working directory and the files
+     *  TRACKED by HEAD and staged in STAGINGAREA, limited to SPARSE. */
+    public WorkingTree(Map<String, String> tracked, StagingArea stagingArea, SparseCheckout sparse) {
+        cache = StatCache.load();
+        Map<String, FileStat> workingFiles = workingFiles(cache);
+        Map<String, String> staged = stagingArea.getAddedFiles();
+        Set<String> removed = stagingArea.getRemovedFiles();
+
+        // Only tracked or staged files need their contents compared
+        cache.update(workingFiles);
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        workingFiles.entrySet().parallelStream()
+                .filter(e -> sparse.matches(e.getKey()))
+                .filter(e -> tracked.containsKey(e.getKey()) || staged.containsKey(e.getKey()))
+                .forEach(e -> hashes.put(e.getKey(), cache.hash(e.getKey(), e.getValue())));
+
+        for (Map.Entry<String, String> entry : tracked.entrySet()) {
+            String fileName = entry.getKey();
+            if (!sparse.matches(fileName) || staged.containsKey(fileName)) {
+                continue;
+            }
+            String hash = hashes.get(fileName);
+            if (hash == null && !removed.contains(fileName)) {
+                unstagedChanges.put(fileName, "deleted");
+            } else if (hash != null && !hash.equals(entry.getValue()) && !removed.contains(fileName)) {
+                unstagedChanges.put(fileName, "modified");
+            }
+        }
+        for (Map.Entry<String, String> entry : staged.entrySet()) {
+            String fileName = entry.getKey();
+            if (!sparse.matches(fileName)) {
+                continue;
+            }
+            String hash = hashes.get(fileName);
+            if (hash == null) {
+                unstagedChanges.put(fileName, "deleted");
+            } else if (!Objects.equals(hash, entry.getValue())) {
+                unstagedChanges.put(fileName, "modified");
+            }
+        }
+        for (String fileName : workingFiles.keySet()) {
+            if (sparse.matches(fileName) && !staged.containsKey(fileName)
+                    && (!tracked.containsKey(fileName) || removed.contains(fileName))) {
+                untrackedFiles.add(fileName);
+            }
+        }
+    }
+
+    // Changed files that are not staged, mapped to "modified" or "deleted", in name order
+    public Map<String, String> getUnstagedChanges() {
+        return unstagedChanges;
+    }
+
+    public Set<String> getUntrackedFiles() {
+        return untrackedFiles;
+    }
+
+    // Write back the stat data and hashes gathered here; the caller holds the repository lock
+    public void saveCache() {
+        cache.save();
+    }
+
+    // The working files, from the cache patched with the watcher's changes or from a full scan
+    private static Map<String, FileStat> workingFiles(StatCache cache) {
+        Watcher.Changes changes = Watcher.changesSince(cache.getWatchToken());
+        cache.setWatchToken(changes.getToken());
+        if (changes.getPaths() == null) {
+            return scan(Repository.CWD);
+        }
+        TreeMap<String, FileStat> files = new TreeMap<>(cache.getFiles());
+        for (String path : changes.getPaths()) {
+            // The path may have been a directory that was removed or renamed
+            files.remove(path);
+            files.subMap(path + "/", path + "0").clear();
+
+            Path file = Utils.join(Repository.CWD, path).toPath();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    files.putAll(scan(file.toFile(), path + "/"));
+                } else if (attrs.isRegularFile()) {
+                    files.put(path, new FileStat(attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+            } catch (IOException excp) {
+                // Deleted since the watcher saw it
+            }
+        }
+        return files;
+    }
+
+    /** Returns every plain file below ROOT except those in .gitlet, keyed by
+     *  its path relative to ROOT with '/' separators. */
+    public static Map<String, FileStat> scan(File root) {
+        return scan(root, "");
+    }
+
+    // As scan(ROOT), with PREFIX before every key
+    private static Map<String, FileStat> scan(File root, String prefix) {
+        Map<String, FileStat> files = new ConcurrentHashMap<>();
+        ForkJoinPool.commonPool().invoke(new ScanTask(root.toPath(), prefix, files));
+        return files;
+    }
+
+    /** Lists one directory and forks a task for each subdirectory. It is
+     *  Serializable only through ForkJoinTask and is never written. */
+    @SuppressWarnings("serial")
+    private static class ScanTask extends RecursiveAction {
+        private final Path dir;
+        private final String prefix;
+        private final Map<String, FileStat> files;
+
+        ScanTask(Path dir, String prefix, Map<String, FileStat> files) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            List<ScanTask> subdirs = new ArrayList<>();
+            try {
+                // With a depth of 1, entries of DIR arrive at visitFile with their attributes
+                Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1,
+                        new SimpleFileVisitor<Path>() {
+                            @Override
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                                String name = file.getFileName().toString();
+                                if (attrs.isDirectory()) {
+                                    if (!name.equals(".gitlet")) {
+                                        subdirs.add(new ScanTask(file, prefix + name + "/", files));
+                                    }
+                                } else if (attrs.isRegularFile()) {
+                                    files.put(prefix + name, new FileStat(attrs.size(),
+                                            attrs.lastModifiedTime().toMillis()));
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFileFailed(Path file, IOException excp) {
+                                return FileVisitResult.CONTINUE; // vanished or unreadable
+                            }
+                        });
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+            invokeAll(subdirs);
+        }
+    }
+}